@@ -0,0 +1,268 @@
+package com.codecool.klondike;
+
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Micro-benchmarks for the hot paths, reporting throughput together with
+ * bytes allocated per operation (what JMH's gc profiler calls
+ * gc.alloc.rate.norm). Headless variants run on the main thread; the
+ * scene-graph variants start the JavaFX toolkit and run on the FX thread.
+ *
+ * <pre>java com.codecool.klondike.Benchmarks [headless=true] [csv=results.csv] [filter=deal]</pre>
+ */
+public class Benchmarks {
+
+    private static final String USAGE =
+            "com.codecool.klondike.Benchmarks [headless=true] [csv=results.csv] [filter=deal]";
+
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+    private static final int MEASURE_ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+    private final List<String> results = new ArrayList<>();
+    private long sink;
+
+    interface Benchmark {
+        long run(int iterations);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = CommandLine.parse(args, USAGE, "headless", "csv", "filter");
+        boolean headlessOnly = Boolean.parseBoolean(options.get("headless"));
+        String csv = options.get("csv");
+        String filter = options.getOrDefault("filter", "");
+
+        Benchmarks benchmarks = new Benchmarks();
+        benchmarks.addHeadless();
+        benchmarks.runAll(filter);
+        if (!headlessOnly) {
+            CountDownLatch started = new CountDownLatch(1);
+            Platform.startup(started::countDown);
+            started.await();
+            benchmarks.benchmarks.clear();
+            benchmarks.onFxThread(() -> {
+                Card.loadCardImages();
+                benchmarks.addSceneGraph();
+            });
+            String sceneFilter = filter;
+            benchmarks.onFxThread(() -> benchmarks.runAll(sceneFilter));
+            Platform.exit();
+        }
+        if (csv != null)
+            benchmarks.writeCsv(csv);
+    }
+
+    private void addHeadless() {
+        GameState state = new GameState();
+        byte[] deck = Deal.shuffle(1);
+        state.deal(deck);
+        int[] moves = new int[GameState.MAX_MOVES];
+
+        benchmarks.put("headless.isMoveValid", iterations -> {
+            long valid = 0;
+            for (int i = 0; i < iterations; i++) {
+                byte card = deck[i % CardCode.CARD_COUNT];
+                for (int pile = GameState.FOUNDATION; pile < GameState.PILE_COUNT; pile++) {
+                    if (state.canPlace(card, pile))
+                        valid++;
+                }
+            }
+            return valid;
+        });
+        benchmarks.put("headless.isOppositeColor", iterations -> {
+            long opposite = 0;
+            for (int i = 0; i < iterations; i++) {
+                if (CardCode.isOppositeColor(deck[i % CardCode.CARD_COUNT], deck[(i + 1) % CardCode.CARD_COUNT]))
+                    opposite++;
+            }
+            return opposite;
+        });
+        benchmarks.put("headless.createNewDeck", iterations -> {
+            for (int i = 0; i < iterations; i++) {
+                Deal.shuffle(i, deck);
+            }
+            return deck[0];
+        });
+        benchmarks.put("headless.addCard", iterations -> {
+            int move = GameState.move(GameState.STOCK, GameState.DISCARD, 1);
+            for (int i = 0; i < iterations; i++) {
+                state.undoMove(state.applyMove(move));
+            }
+            return state.size(GameState.DISCARD);
+        });
+        benchmarks.put("headless.dealCards", iterations -> {
+            for (int i = 0; i < iterations; i++) {
+                state.deal(deck);
+            }
+            return state.size(GameState.STOCK);
+        });
+        benchmarks.put("headless.generateMoves", iterations -> {
+            long count = 0;
+            for (int i = 0; i < iterations; i++) {
+                count += state.generateMoves(moves);
+            }
+            return count;
+        });
+    }
+
+    private void addSceneGraph() {
+        Game game = new Game(1);
+        List<Card> deck = Card.createNewDeck(1);
+        Pane table = new Pane();
+        Pile source = new Pile(Pile.PileType.TABLEAU, "Source", 30);
+        Pile dest = new Pile(Pile.PileType.TABLEAU, "Dest", 30);
+        table.getChildren().addAll(source, dest);
+        table.getChildren().addAll(deck);
+        deck.forEach(source::addCard);
+        Pile[] targets = new Pile[GameState.PILE_COUNT - GameState.FOUNDATION];
+        for (int pile = GameState.FOUNDATION; pile < GameState.PILE_COUNT; pile++) {
+            targets[pile - GameState.FOUNDATION] = game.getPile(pile);
+        }
+
+        benchmarks.put("sceneGraph.isMoveValid", iterations -> {
+            long valid = 0;
+            for (int i = 0; i < iterations; i++) {
+                Card card = deck.get(i % deck.size());
+                for (Pile target : targets) {
+                    if (game.isMoveValid(card, target))
+                        valid++;
+                }
+            }
+            return valid;
+        });
+        benchmarks.put("sceneGraph.isOppositeColor", iterations -> {
+            long opposite = 0;
+            for (int i = 0; i < iterations; i++) {
+                if (Card.isOppositeColor(deck.get(i % deck.size()), deck.get((i + 1) % deck.size())))
+                    opposite++;
+            }
+            return opposite;
+        });
+        benchmarks.put("sceneGraph.createNewDeck", iterations -> {
+            long size = 0;
+            for (int i = 0; i < iterations; i++) {
+                size += Card.createNewDeck(i).size();
+            }
+            return size;
+        });
+        benchmarks.put("sceneGraph.addCard", iterations -> {
+            for (int i = 0; i < iterations; i++) {
+                Pile from = source.isEmpty() ? dest : source;
+                Pile to = from == source ? dest : source;
+                Card card = from.getTopCard();
+                from.getCards().remove(card);
+                to.addCard(card);
+            }
+            return source.numOfCards();
+        });
+        benchmarks.put("sceneGraph.dealCards", iterations -> {
+            long cards = 0;
+            for (int i = 0; i < iterations; i++) {
+                game.dealCards();
+                cards += game.getChildren().size();
+            }
+            return cards;
+        });
+        benchmarks.put("sceneGraph.restart", iterations -> {
+            long cards = 0;
+            for (int i = 0; i < iterations; i++) {
+                game.restart();
+                cards += game.getChildren().size();
+            }
+            return cards;
+        });
+    }
+
+    private void runAll(String filter) {
+        System.out.printf("%-30s %14s %10s %16s%n", "Benchmark", "ops/s", "error", "alloc B/op");
+        for (Map.Entry<String, Benchmark> entry : benchmarks.entrySet()) {
+            if (entry.getKey().contains(filter))
+                measure(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void measure(String name, Benchmark benchmark) {
+        int batch = calibrate(benchmark);
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd) {
+            sink += benchmark.run(batch);
+        }
+
+        double[] rates = new double[MEASURE_ROUNDS];
+        long totalOps = 0;
+        long totalBytes = 0;
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            long ops = 0;
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink += benchmark.run(batch);
+                ops += batch;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MEASURE_NANOS);
+            totalBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+            totalOps += ops;
+            rates[round] = ops * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate / MEASURE_ROUNDS;
+        }
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / (MEASURE_ROUNDS - 1);
+        }
+        double error = Math.sqrt(variance);
+        double bytesPerOp = (double) totalBytes / totalOps;
+        System.out.printf("%-30s %14.0f %10.0f %16.2f%n", name, mean, error, bytesPerOp);
+        results.add(String.format("%s,%.0f,%.0f,%.2f", name, mean, error, bytesPerOp));
+    }
+
+    private int calibrate(Benchmark benchmark) {
+        int batch = 1;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 10_000_000L && batch < (1 << 24)) {
+            sink += benchmark.run(batch);
+            batch *= 2;
+        }
+        return batch;
+    }
+
+    private void onFxThread(Runnable task) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    private void writeCsv(String path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path)))) {
+            writer.println("benchmark,opsPerSecond,error,allocBytesPerOp");
+            results.forEach(writer::println);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.codecool.klondike;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load generator for {@link GameServer}. Every simulated player keeps
+ * a mirror of its game, picks a random legal move, sends it and waits for
+ * the reply before sending the next one (closed loop). Reports move latency
+ * percentiles and overall throughput.
+ *
+ * <pre>java com.codecool.klondike.ServerLoadTest [sessions=10000] [moves=100] [threads=N] [draw=3 redeals=2]</pre>
+ */
+public class ServerLoadTest {
+
+    private static final String USAGE =
+            "com.codecool.klondike.ServerLoadTest [sessions=10000] [moves=100] [threads=N] [draw=3 redeals=2]";
+
+    private final GameServer server;
+    private final int movesPerSession;
+    private final LatencyHistogram latencies = new LatencyHistogram("move");
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final CountDownLatch finished;
+
+    private ServerLoadTest(GameServer server, int sessions, int movesPerSession) {
+        this.server = server;
+        this.movesPerSession = movesPerSession;
+        finished = new CountDownLatch(sessions);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = CommandLine.parse(args, USAGE,
+                "sessions", "moves", "threads", "draw", "redeals", "scoring");
+        int sessions;
+        int moves;
+        int threads;
+        Rules rules;
+        try {
+            sessions = Integer.parseInt(options.getOrDefault("sessions", "10000"));
+            moves = Integer.parseInt(options.getOrDefault("moves", "100"));
+            threads = Integer.parseInt(options.getOrDefault("threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            rules = Rules.fromOptions(options);
+        } catch (IllegalArgumentException e) {
+            CommandLine.fail("Bad option: " + e.getMessage(), USAGE);
+            return;
+        }
+        try (GameServer server = new GameServer(threads, rules)) {
+            new ServerLoadTest(server, sessions, moves).run(sessions);
+        }
+    }
+
+    private void run(int sessions) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            new Player(server.open(Deal.randomDealNumber()), new SplittableRandom(i)).start();
+        }
+        finished.await();
+        long elapsed = System.nanoTime() - start;
+
+        long count = latencies.count();
+        System.out.printf("sessions=%d moves=%d rejected=%d elapsed=%.2fs throughput=%.0f moves/s%n",
+                server.sessionCount(), count, rejected.get(), elapsed / 1e9, count / (elapsed / 1e9));
+        System.out.println(latencies);
+    }
+
+    private final class Player {
+        private final GameSession session;
+        private final SplittableRandom random;
+        private final GameState mirror = new GameState();
+        private final int[] moves = new int[GameState.MAX_MOVES];
+        private int played;
+        private long sentAt;
+
+        Player(GameSession session, SplittableRandom random) {
+            this.session = session;
+            this.random = random;
+        }
+
+        void start() {
+            session.snapshot(mirror).thenRun(this::next);
+        }
+
+        private void next() {
+            if (played == movesPerSession) {
+                finished.countDown();
+                return;
+            }
+            int choice = mirror.isWon() ? -1
+                    : PlayPolicy.RANDOM.choose(mirror, moves, mirror.generateMoves(moves), random);
+            if (choice < 0) {
+                long dealNumber = Deal.randomDealNumber();
+                mirror.deal(Deal.shuffle(dealNumber));
+                session.deal(dealNumber).thenRun(this::next);
+                return;
+            }
+            sentAt = System.nanoTime();
+            session.move(moves[choice]).thenAccept(this::onReply);
+        }
+
+        private void onReply(int applied) {
+            latencies.recordSince(sentAt);
+            played++;
+            if (applied == GameSession.ILLEGAL_MOVE) {
+                rejected.incrementAndGet();
+            } else {
+                mirror.applyMove(applied);
+            }
+            next();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.codecool.klondike;
+
+/**
+ * Finishes a game once every card is face up by sending cards to the
+ * foundations, cycling the stock when nothing else can move.
+ */
+public final class AutoComplete {
+
+    private static final int MAX_MOVES = 512;
+
+    private AutoComplete() {
+    }
+
+    public static boolean isAvailable(GameState state) {
+        return !state.isWon() && state.isEmpty(GameState.STOCK) && state.faceDownCount() == 0;
+    }
+
+    /**
+     * Writes the finishing sequence for {@code position} into {@code out}
+     * (at least 52 moves long) and returns its length, or -1 if the game
+     * cannot be finished this way. {@code position} is left untouched.
+     */
+    public static int plan(GameState position, int[] out) {
+        GameState state = new GameState();
+        state.copyFrom(position);
+        int count = 0;
+        int idleMoves = 0;
+        while (!state.isWon()) {
+            int move = foundationMove(state);
+            if (move != 0) {
+                idleMoves = 0;
+            } else if (++idleMoves > state.size(GameState.STOCK) + state.size(GameState.DISCARD) + 1) {
+                return -1;
+            } else if (!state.isEmpty(GameState.STOCK)) {
+                move = state.drawMove();
+            } else if (state.canRedeal()) {
+                move = state.redealMove();
+            } else {
+                return -1;
+            }
+            if (count == out.length || count == MAX_MOVES)
+                return -1;
+            out[count++] = state.applyMove(move);
+        }
+        return count;
+    }
+
+    private static int foundationMove(GameState state) {
+        for (int source = GameState.DISCARD; source < GameState.PILE_COUNT; source++) {
+            if (GameState.isFoundation(source) || state.isEmpty(source))
+                continue;
+            for (int dest = GameState.FOUNDATION; dest < GameState.TABLEAU; dest++) {
+                if (state.canPlace(state.top(source), dest))
+                    return GameState.move(source, dest, 1);
+            }
+        }
+        return 0;
+    }
+}
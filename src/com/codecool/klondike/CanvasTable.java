@@ -0,0 +1,416 @@
+package com.codecool.klondike;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.effect.GaussianBlur;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
+import javafx.scene.text.Font;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.LongSupplier;
+
+/**
+ * Draws the whole table onto one {@link Canvas} straight from a
+ * {@link GameState}. Shadows and pile slots are pre-baked sprites, and after
+ * a move or drag step only the rectangles that changed are repainted.
+ */
+public class CanvasTable extends Pane implements GameView {
+
+    private static final double SHADOW_PADDING = 32;
+    private static final double DROP_ZONE_CELL = 30;
+
+    private final TableLayout layout = new TableLayout();
+    private final Canvas canvas = new Canvas(TableLayout.DESIGN_WIDTH, TableLayout.DESIGN_HEIGHT);
+    private final GraphicsContext gc = canvas.getGraphicsContext2D();
+    private int atlasLevel;
+    private Image atlas;
+    private Image shadowSprite;
+    private Image liftedShadowSprite;
+    private Image slotSprite;
+    private ImagePattern tablePattern;
+
+    private final GameState state;
+    private final MoveLog moveLog = new MoveLog();
+    private final MoveIndex moveIndex;
+    private MoveEventLog eventLog = MoveEventLog.DISABLED;
+    private GameEventStream eventStream = GameEventStream.DISABLED;
+    private final DealPreparer nextDeal;
+    private DropZoneIndex dropZones;
+    private long dealNumber;
+
+    private int dragPile = -1;
+    private int dragPosition;
+    private double dragOffsetX, dragOffsetY;
+    private double dragX, dragY;
+
+    public CanvasTable(long dealNumber) {
+        this(dealNumber, Rules.DEFAULT);
+    }
+
+    public CanvasTable(long dealNumber, Rules rules) {
+        state = new GameState(rules);
+        moveIndex = new MoveIndex(state);
+        nextDeal = new DealPreparer(rules, Deal::randomDealNumber);
+        applyLayout();
+
+        getChildren().add(canvas);
+        Button restartBtn = new Button("Restart");
+        restartBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        restartBtn.setOnAction(e -> restart());
+        Button undoBtn = new Button("Undo");
+        undoBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        undoBtn.setLayoutY(45);
+        undoBtn.setOnAction(e -> undo());
+        getChildren().addAll(restartBtn, undoBtn);
+
+        canvas.setOnMousePressed(this::onMousePressed);
+        canvas.setOnMouseDragged(Metrics.timed(Metrics.MOUSE_DRAGGED, this::onMouseDragged));
+        canvas.setOnMouseReleased(Metrics.timed(Metrics.MOUSE_RELEASED, this::onMouseReleased));
+        canvas.setOnMouseClicked(Metrics.timed(Metrics.MOUSE_CLICKED, this::onMouseClicked));
+        deal(dealNumber);
+    }
+
+    public void deal(long dealNumber) {
+        long start = System.nanoTime();
+        this.dealNumber = dealNumber;
+        state.deal(Deal.shuffle(dealNumber));
+        showDeal();
+        Metrics.DEAL.recordSince(start);
+    }
+
+    /**
+     * Swaps in the deal {@link DealPreparer} got ready in the background.
+     */
+    public void restart() {
+        long start = System.nanoTime();
+        DealPreparer.Prepared prepared = nextDeal.take();
+        dealNumber = prepared.getDealNumber();
+        state.copyFrom(prepared.getState());
+        showDeal();
+        Metrics.DEAL.recordSince(start);
+    }
+
+    private void showDeal() {
+        moveLog.clear();
+        eventLog.deal(dealNumber);
+        eventStream.deal(dealNumber);
+        dragPile = -1;
+        redrawAll();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (getWidth() > 0 && getHeight() > 0 &&
+                (getWidth() != layout.getWidth() || getHeight() != layout.getHeight())) {
+            layout.update(getWidth(), getHeight());
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            applyLayout();
+            redrawAll();
+        }
+    }
+
+    /**
+     * Picks the atlas level and bakes the sprites for the current card size
+     * and rebuilds the drop zones.
+     */
+    private void applyLayout() {
+        double cardWidth = layout.getCardWidth();
+        double cardHeight = layout.getCardHeight();
+        atlasLevel = CardAtlas.levelFor(cardWidth);
+        atlas = Card.getAtlas().getImage(atlasLevel);
+        shadowSprite = bakeShadow(2, 0, cardWidth, cardHeight);
+        liftedShadowSprite = bakeShadow(20 * layout.getScale(), 10 * layout.getScale(), cardWidth, cardHeight);
+        slotSprite = bakeSlot(cardWidth, cardHeight);
+        dropZones = DropZoneIndex.forLayout(layout, DROP_ZONE_CELL * layout.getScale());
+    }
+
+    public void setTableBackground(Image tableBackground) {
+        tablePattern = new ImagePattern(tableBackground, 0, 0,
+                tableBackground.getWidth(), tableBackground.getHeight(), false);
+        redrawAll();
+    }
+
+    @Override
+    public boolean isGameWon() {
+        return state.isWon();
+    }
+
+    @Override
+    public void setEventLog(MoveEventLog eventLog) {
+        this.eventLog = eventLog;
+        eventLog.resume(dealNumber);
+    }
+
+    @Override
+    public void setEventStream(GameEventStream eventStream) {
+        this.eventStream = eventStream;
+        eventStream.resume(dealNumber);
+    }
+
+    @Override
+    public void setDealSource(LongSupplier dealSource) {
+        nextDeal.setDealSource(dealSource);
+    }
+
+    @Override
+    public void setWinnableOnly(boolean winnableOnly) {
+        nextDeal.setWinnableOnly(winnableOnly);
+    }
+
+    @Override
+    public void setProvenDeals(LongSupplier provenDeals) {
+        nextDeal.setProvenDeals(provenDeals);
+    }
+
+    @Override
+    public void save(Path file) throws IOException {
+        try (GameArchive.Writer writer = GameArchive.create(file, state.getRules())) {
+            writer.append(dealNumber, moveLog);
+        }
+    }
+
+    public static CanvasTable load(Path file, Rules rules) throws IOException {
+        try (GameArchive archive = GameArchive.open(file)) {
+            Game.checkResumable(archive, rules);
+            CanvasTable table = new CanvasTable(archive.dealNumber(0), rules);
+            for (int i = 0; i < archive.undoPosition(0); i++) {
+                table.moveLog.record(archive.replayMove(0, i, table.state));
+            }
+            table.redrawAll();
+            return table;
+        }
+    }
+
+    private void onMousePressed(MouseEvent e) {
+        int pile = pileAt(e.getX(), e.getY());
+        if (pile < 0 || pile == GameState.STOCK || state.isEmpty(pile))
+            return;
+        int position = cardAt(pile, e.getY());
+        if (position < 0 || CardCode.isFaceDown(state.card(pile, position)))
+            return;
+        if (pile != GameState.DISCARD && !GameState.isTableau(pile))
+            position = state.size(pile) - 1;
+        if (pile == GameState.DISCARD && position != state.size(pile) - 1)
+            return;
+        dragPile = pile;
+        dragPosition = position;
+        dragOffsetX = e.getX() - pileX(pile);
+        dragOffsetY = e.getY() - cardY(pile, position);
+        dragX = pileX(pile);
+        dragY = cardY(pile, position);
+    }
+
+    private void onMouseDragged(MouseEvent e) {
+        if (dragPile < 0)
+            return;
+        double oldX = dragX;
+        double oldY = dragY;
+        dragX = e.getX() - dragOffsetX;
+        dragY = e.getY() - dragOffsetY;
+        double runHeight = layout.getCardHeight() + (state.size(dragPile) - 1 - dragPosition) * cardGap(dragPile);
+        redraw(Math.min(oldX, dragX), Math.min(oldY, dragY),
+                Math.abs(dragX - oldX) + layout.getCardWidth(), Math.abs(dragY - oldY) + runHeight);
+    }
+
+    private void onMouseReleased(MouseEvent e) {
+        if (dragPile < 0)
+            return;
+        int source = dragPile;
+        int count = state.size(source) - dragPosition;
+        byte card = state.card(source, dragPosition);
+        dragPile = -1;
+        redraw(dragX, dragY, layout.getCardWidth(), layout.getCardHeight() + (count - 1) * cardGap(source));
+
+        int dest = bestTarget(card, source, count, dragX + layout.getCardWidth() / 2.0,
+                dragY + layout.getCardHeight() / 2.0);
+        if (dest >= 0) {
+            play(GameState.move(source, dest, count));
+        } else {
+            redrawPile(source);
+        }
+    }
+
+    private void onMouseClicked(MouseEvent e) {
+        if (e.getButton() != MouseButton.PRIMARY || !e.isStillSincePress())
+            return;
+        int pile = pileAt(e.getX(), e.getY());
+        if (pile == GameState.STOCK) {
+            int move = state.isEmpty(GameState.STOCK) ? state.redealMove() : state.drawMove();
+            if (move != 0)
+                play(move);
+        } else if (pile >= 0 && e.getClickCount() == 2 && !state.isEmpty(pile) &&
+                cardAt(pile, e.getY()) == state.size(pile) - 1) {
+            int move = moveIndex.moveForTopCard(pile);
+            if (move != MoveIndex.NO_MOVE)
+                play(move);
+        }
+    }
+
+    private int bestTarget(byte card, int source, int count, double x, double y) {
+        int best = -1;
+        for (int candidates = dropZones.candidates(x, y); candidates != 0;
+                candidates = DropZoneIndex.rest(candidates)) {
+            int pile = DropZoneIndex.first(candidates);
+            if (isTarget(card, source, count, pile) &&
+                    (best < 0 || dropZones.distance(pile, x, y) < dropZones.distance(best, x, y)))
+                best = pile;
+        }
+        return best;
+    }
+
+    private boolean isTarget(byte card, int source, int count, int pile) {
+        return pile != DropZoneIndex.NONE && pile != source &&
+                (count == 1 || GameState.isTableau(pile)) && state.canPlace(card, pile);
+    }
+
+    private void play(int move) {
+        int applied = state.applyMove(move);
+        moveLog.record(applied);
+        eventLog.move(applied, state);
+        eventStream.move(applied, state);
+        redrawPile(GameState.moveFrom(move));
+        redrawPile(GameState.moveTo(move));
+        if (state.isWon())
+            redrawAll();
+    }
+
+    private void undo() {
+        if (!moveLog.canUndo())
+            return;
+        int move = moveLog.undo();
+        state.undoMove(move);
+        eventLog.undo(move);
+        eventStream.undo(move);
+        redrawPile(GameState.moveFrom(move));
+        redrawPile(GameState.moveTo(move));
+    }
+
+    private void redrawAll() {
+        redraw(0, 0, layout.getWidth(), layout.getHeight());
+    }
+
+    private void redrawPile(int pile) {
+        double height = GameState.isTableau(pile) ? layout.getHeight() - pileY(pile) :
+                layout.getCardHeight() + CardCode.CARD_COUNT * layout.cardGap(pile);
+        redraw(pileX(pile), pileY(pile), layout.getCardWidth(), height);
+    }
+
+    /**
+     * Repaints everything that overlaps the given rectangle, clipped to it
+     * (grown by the shadow padding).
+     */
+    private void redraw(double x, double y, double width, double height) {
+        Rectangle2D dirty = new Rectangle2D(x - SHADOW_PADDING, y - SHADOW_PADDING,
+                width + 2 * SHADOW_PADDING, height + 2 * SHADOW_PADDING);
+        gc.save();
+        gc.beginPath();
+        gc.rect(dirty.getMinX(), dirty.getMinY(), dirty.getWidth(), dirty.getHeight());
+        gc.clip();
+        gc.setFill(tablePattern != null ? tablePattern : Color.DARKGREEN);
+        gc.fillRect(dirty.getMinX(), dirty.getMinY(), dirty.getWidth(), dirty.getHeight());
+
+        for (int pile = 0; pile < GameState.PILE_COUNT; pile++) {
+            double pileHeight = cardY(pile, Math.max(0, state.size(pile) - 1)) - pileY(pile) + layout.getCardHeight();
+            if (!dirty.intersects(pileX(pile) - SHADOW_PADDING, pileY(pile) - SHADOW_PADDING,
+                    layout.getCardWidth() + 2 * SHADOW_PADDING, pileHeight + 2 * SHADOW_PADDING))
+                continue;
+            gc.drawImage(slotSprite, pileX(pile) - SHADOW_PADDING, pileY(pile) - SHADOW_PADDING);
+            int end = pile == dragPile ? dragPosition : state.size(pile);
+            for (int position = 0; position < end; position++) {
+                drawCard(state.card(pile, position), pileX(pile), cardY(pile, position), shadowSprite);
+            }
+        }
+        if (dragPile >= 0) {
+            for (int position = dragPosition; position < state.size(dragPile); position++) {
+                drawCard(state.card(dragPile, position), dragX,
+                        dragY + (position - dragPosition) * cardGap(dragPile), liftedShadowSprite);
+            }
+        }
+        if (state.isWon()) {
+            gc.setFill(Color.WHITE);
+            gc.setFont(Font.font("arial", 48));
+            gc.fillText("Congratulations!", layout.getWidth() / 2 - 180, layout.getHeight() / 2);
+        }
+        gc.restore();
+    }
+
+    private void drawCard(byte card, double x, double y, Image shadow) {
+        gc.drawImage(shadow, x - SHADOW_PADDING, y - SHADOW_PADDING);
+        Rectangle2D source = CardCode.isFaceDown(card) ?
+                Card.getAtlas().getBackViewport(atlasLevel) : Card.getAtlas().getFaceViewport(card, atlasLevel);
+        gc.drawImage(atlas, source.getMinX(), source.getMinY(), source.getWidth(), source.getHeight(),
+                x, y, layout.getCardWidth(), layout.getCardHeight());
+    }
+
+    private int pileAt(double x, double y) {
+        for (int pile = 0; pile < GameState.PILE_COUNT; pile++) {
+            double bottom = cardY(pile, Math.max(0, state.size(pile) - 1)) + layout.getCardHeight();
+            if (x >= pileX(pile) && x < pileX(pile) + layout.getCardWidth() && y >= pileY(pile) && y < bottom)
+                return pile;
+        }
+        return -1;
+    }
+
+    private int cardAt(int pile, double y) {
+        for (int position = state.size(pile) - 1; position >= 0; position--) {
+            if (y >= cardY(pile, position) && y < cardY(pile, position) + layout.getCardHeight())
+                return position;
+        }
+        return -1;
+    }
+
+    private double pileX(int pile) {
+        return layout.pileX(pile);
+    }
+
+    private double pileY(int pile) {
+        return layout.pileY(pile);
+    }
+
+    private double cardY(int pile, int position) {
+        return layout.cardY(pile, position, state.size(pile));
+    }
+
+    private double cardGap(int pile) {
+        return layout.cardGap(pile, state.size(pile));
+    }
+
+    private static Image bakeShadow(double radius, double offset, double cardWidth, double cardHeight) {
+        Canvas sprite = new Canvas(cardWidth + 2 * SHADOW_PADDING, cardHeight + 2 * SHADOW_PADDING);
+        GraphicsContext spriteGc = sprite.getGraphicsContext2D();
+        DropShadow shadow = new DropShadow(radius, Color.gray(0, 0.75));
+        shadow.setOffsetX(offset);
+        shadow.setOffsetY(offset);
+        spriteGc.setEffect(shadow);
+        spriteGc.setFill(Color.gray(0, 0.75));
+        spriteGc.fillRoundRect(SHADOW_PADDING + 2, SHADOW_PADDING + 2, cardWidth - 4, cardHeight - 4, 12, 12);
+        return snapshot(sprite);
+    }
+
+    private static Image bakeSlot(double cardWidth, double cardHeight) {
+        Canvas sprite = new Canvas(cardWidth + 2 * SHADOW_PADDING, cardHeight + 2 * SHADOW_PADDING);
+        GraphicsContext spriteGc = sprite.getGraphicsContext2D();
+        spriteGc.setEffect(new GaussianBlur(10));
+        spriteGc.setFill(Color.gray(0.0, 0.2));
+        spriteGc.fillRect(SHADOW_PADDING, SHADOW_PADDING, cardWidth, cardHeight);
+        return snapshot(sprite);
+    }
+
+    private static Image snapshot(Canvas sprite) {
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return sprite.snapshot(parameters, null);
+    }
+}
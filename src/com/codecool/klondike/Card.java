@@ -1,7 +1,6 @@
 package com.codecool.klondike;
 
 import javafx.scene.effect.DropShadow;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.paint.Color;
 
@@ -11,15 +10,19 @@ public class Card extends ImageView {
 
     private int suit;
     private int rank;
+    private byte code;
     private boolean faceDown;
+    private int atlasLevel;
 
-    private Image backFace;
-    private Image frontFace;
     private Pile containingPile;
     private DropShadow dropShadow;
+    private CardAnimator animator;
 
-    static Image cardBackImage;
-    private static final Map<String, Image> cardFaceImages = new HashMap<>();
+    private static CardAtlas atlas;
+    /**
+     * Size of the card images. On screen cards are scaled to the size
+     * {@link TableLayout} picks.
+     */
     public static final int WIDTH = 150;
     public static final int HEIGHT = 215;
 
@@ -27,10 +30,10 @@ public class Card extends ImageView {
         this.suit = suit;
         this.rank = rank;
         this.faceDown = faceDown;
+        this.code = CardCode.of(suit, rank);
         this.dropShadow = new DropShadow(2, Color.gray(0, 0.75));
-        backFace = cardBackImage;
-        frontFace = cardFaceImages.get(getShortName());
-        setImage(faceDown ? backFace : frontFace);
+        setImage(atlas.getImage());
+        updateViewport();
         setEffect(dropShadow);
     }
 
@@ -42,6 +45,10 @@ public class Card extends ImageView {
         return rank;
     }
 
+    public byte getCode() {
+        return code;
+    }
+
     public boolean isFaceDown() {
         return faceDown;
     }
@@ -54,6 +61,12 @@ public class Card extends ImageView {
         return dropShadow;
     }
 
+    public CardAnimator getAnimator() {
+        if (animator == null)
+            animator = new CardAnimator(this, MouseUtil.SLIDE_DURATION);
+        return animator;
+    }
+
     public Pile getContainingPile() {
         return containingPile;
     }
@@ -83,9 +96,53 @@ public class Card extends ImageView {
         }
     }
 
+    /**
+     * Lands a card that is still sliding onto its destination pile.
+     */
+    public void completeSlide() {
+        if (animator != null)
+            animator.complete();
+    }
+
+    /**
+     * Puts the card back into its freshly dealt state so it can be reused
+     * for a new game.
+     */
+    public void reset(boolean faceDown) {
+        if (animator != null)
+            animator.cancel();
+        setTranslateX(0);
+        setTranslateY(0);
+        dropShadow.setColor(Color.gray(0, 0.75));
+        dropShadow.setRadius(2);
+        dropShadow.setOffsetX(0);
+        dropShadow.setOffsetY(0);
+        this.faceDown = faceDown;
+        updateViewport();
+    }
+
+    /**
+     * Draws the card at {@code width} x {@code height} from the atlas level
+     * closest to that size.
+     */
+    public void setSize(double width, double height) {
+        int level = CardAtlas.levelFor(width);
+        if (level != atlasLevel) {
+            atlasLevel = level;
+            setImage(atlas.getImage(level));
+            updateViewport();
+        }
+        setFitWidth(width);
+        setFitHeight(height);
+    }
+
     public void flip() {
         faceDown = !faceDown;
-        setImage(faceDown ? backFace : frontFace);
+        updateViewport();
+    }
+
+    private void updateViewport() {
+        setViewport(faceDown ? atlas.getBackViewport(atlasLevel) : atlas.getFaceViewport(code, atlasLevel));
     }
 
     @Override
@@ -94,18 +151,11 @@ public class Card extends ImageView {
     }
 
     public static boolean isOppositeColor(Card card1, Card card2) {
-        String cardColor1 = getCardColor(card1);
-        String cardColor2 = getCardColor(card2);
-
-        return !cardColor1.equals(cardColor2);
+        return CardCode.isOppositeColor(card1.code, card2.code);
     }
 
-    public static  String getCardColor(Card card) {
-        if(card.getSuit() == 1 || card.getSuit() == 2) {
-            return "red";
-        } else {
-            return "black";
-        }
+    public static String getCardColor(Card card) {
+        return CardCode.isRed(card.code) ? "red" : "black";
     }
 
     public static boolean isHigherRank(Card card1, Card card2) {
@@ -113,46 +163,44 @@ public class Card extends ImageView {
     }
 
     public static boolean isSameSuit(Card card1, Card card2) {
-        return card1.getSuit() == card2.getSuit();
+        return CardCode.suit(card1.code) == CardCode.suit(card2.code);
+    }
+
+    /**
+     * Whether {@code card} may be built down on {@code onto} in a tableau.
+     */
+    public static boolean canStack(Card card, Card onto) {
+        return CardTables.canStack(card.code, onto.code);
     }
 
     public static List<Card> createNewDeck() {
+        return createNewDeck(Deal.randomDealNumber());
+    }
 
+    public static List<Card> createNewDeck(long dealNumber) {
         List<Card> result = new ArrayList<>();
-        for (int suit = 1; suit < 5; suit++) {
-            for (int rank = 1; rank < 14; rank++) {
-                result.add(new Card(suit, rank, true));
-            }
+        for (byte code : Deal.shuffle(dealNumber)) {
+            result.add(new Card(CardCode.suit(code), CardCode.rank(code), true));
         }
-        Collections.shuffle(result);
         return result;
     }
 
-    public static void loadCardImages() {
-        cardBackImage = new Image("card_images/card_back.png");
-        String suitName = "";
-        for (int suit = 1; suit < 5; suit++) {
-            switch (suit) {
-                case 1:
-                    suitName = "hearts";
-                    break;
-                case 2:
-                    suitName = "diamonds";
-                    break;
-                case 3:
-                    suitName = "spades";
-                    break;
-                case 4:
-                    suitName = "clubs";
-                    break;
-            }
-            for (int rank = 1; rank < 14; rank++) {
-                String cardName = suitName + rank;
-                String cardId = "S" + suit + "R" + rank;
-                String imageFileName = "card_images/" + cardName + ".png";
-                cardFaceImages.put(cardId, new Image(imageFileName));
-            }
+    public static byte[] toCodes(List<Card> deck) {
+        byte[] codes = new byte[deck.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = deck.get(i).getCode();
         }
+        return codes;
+    }
+
+    public static CardAtlas getAtlas() {
+        return atlas;
+    }
+
+    public static void loadCardImages() {
+        long start = System.nanoTime();
+        atlas = CardAtlas.load();
+        Metrics.IMAGE_LOAD.recordSince(start);
     }
 
 }
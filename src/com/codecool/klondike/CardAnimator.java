@@ -0,0 +1,88 @@
+package com.codecool.klondike;
+
+import javafx.animation.Animation;
+import javafx.animation.Interpolator;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.ParallelTransition;
+import javafx.animation.PathTransition;
+import javafx.animation.Timeline;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.util.Duration;
+
+/**
+ * The slide animation of one card, built once and retargeted for every
+ * move instead of allocating a new path and transitions each time.
+ */
+public class CardAnimator {
+
+    private final Card card;
+    private final MoveTo start = new MoveTo();
+    private final LineTo end = new LineTo();
+    private final ParallelTransition transition;
+    private Pile destPile;
+    private long startNanos;
+
+    public CardAnimator(Card card, Duration duration) {
+        this.card = card;
+
+        PathTransition pathTransition = new PathTransition(duration, new Path(start, end), card);
+        pathTransition.setInterpolator(Interpolator.EASE_IN);
+
+        Timeline blurReset = new Timeline(new KeyFrame(duration,
+                new KeyValue(card.getDropShadow().offsetXProperty(), 0, Interpolator.EASE_IN),
+                new KeyValue(card.getDropShadow().offsetYProperty(), 0, Interpolator.EASE_IN),
+                new KeyValue(card.getDropShadow().radiusProperty(), 2, Interpolator.EASE_IN)));
+
+        transition = new ParallelTransition(card, pathTransition, blurReset);
+        transition.setOnFinished(e -> finish());
+    }
+
+    /**
+     * Slides the card between two absolute positions and, if
+     * {@code destPile} is not null, moves it onto that pile at the end.
+     */
+    public void slide(double sourceX, double sourceY, double targetX, double targetY, Pile destPile) {
+        complete();
+        double centerX = card.getLayoutBounds().getWidth() / 2 - card.getLayoutX();
+        double centerY = card.getLayoutBounds().getHeight() / 2 - card.getLayoutY();
+        start.setX(sourceX + centerX);
+        start.setY(sourceY + centerY);
+        end.setX(targetX + centerX);
+        end.setY(targetY + centerY);
+        this.destPile = destPile;
+        startNanos = System.nanoTime();
+        transition.playFromStart();
+    }
+
+    /**
+     * Ends a running slide at once, with the card on its destination pile.
+     */
+    public void complete() {
+        if (transition.getStatus() == Animation.Status.RUNNING) {
+            transition.stop();
+            finish();
+        }
+    }
+
+    /**
+     * Stops a running slide without moving the card to its destination.
+     */
+    public void cancel() {
+        destPile = null;
+        transition.stop();
+    }
+
+    private void finish() {
+        Metrics.ANIMATION.recordSince(startNanos);
+        Pile pile = destPile;
+        destPile = null;
+        if (pile != null)
+            card.moveToPile(pile);
+        card.getDropShadow().setRadius(2);
+        card.getDropShadow().setOffsetX(0);
+        card.getDropShadow().setOffsetY(0);
+    }
+}
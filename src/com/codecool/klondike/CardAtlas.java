@@ -0,0 +1,247 @@
+package com.codecool.klondike;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * All 53 card images packed into one image, 13 ranks per row, one row per
+ * suit and the card back on the last row. The packed pixels are cached on
+ * disk, keyed by a checksum of the PNGs, so later starts decode a single
+ * file instead of 53 PNGs and edited images are picked up.
+ * <p>
+ * Half and quarter size copies are box-filtered from it at load time, so
+ * cards drawn small are sampled from the nearest larger level instead of
+ * from the full-size pixels.
+ */
+public class CardAtlas {
+
+    public static final int LEVEL_COUNT = 3;
+
+    private static final int MAGIC = 0x4b415432;
+    private static final int COLUMNS = 13;
+    private static final int ROWS = 5;
+    private static final String[] SUIT_NAMES = {"hearts", "diamonds", "spades", "clubs"};
+    private static final WritablePixelFormat<ByteBuffer> FORMAT = WritablePixelFormat.getByteBgraPreInstance();
+
+    private final Image[] images;
+    private final Rectangle2D[][] faceViewports = new Rectangle2D[LEVEL_COUNT][CardCode.CARD_COUNT];
+    private final Rectangle2D[] backViewports = new Rectangle2D[LEVEL_COUNT];
+
+    private CardAtlas(Image[] images) {
+        this.images = images;
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            for (int index = 0; index < CardCode.CARD_COUNT; index++) {
+                faceViewports[level][index] = cell(index % COLUMNS, index / COLUMNS, level);
+            }
+            backViewports[level] = cell(0, ROWS - 1, level);
+        }
+    }
+
+    public Image getImage() {
+        return images[0];
+    }
+
+    public Image getImage(int level) {
+        return images[level];
+    }
+
+    public Rectangle2D getFaceViewport(byte code) {
+        return getFaceViewport(code, 0);
+    }
+
+    public Rectangle2D getFaceViewport(byte code, int level) {
+        return faceViewports[level][CardCode.index(code)];
+    }
+
+    public Rectangle2D getBackViewport() {
+        return getBackViewport(0);
+    }
+
+    public Rectangle2D getBackViewport(int level) {
+        return backViewports[level];
+    }
+
+    /**
+     * The smallest level whose cards are still at least
+     * {@code cardWidth} pixels wide.
+     */
+    public static int levelFor(double cardWidth) {
+        int level = 0;
+        while (level + 1 < LEVEL_COUNT && cellWidth(level + 1) >= cardWidth) {
+            level++;
+        }
+        return level;
+    }
+
+    private static int cellWidth(int level) {
+        return Card.WIDTH >> level;
+    }
+
+    private static int cellHeight(int level) {
+        return Card.HEIGHT >> level;
+    }
+
+    private static Rectangle2D cell(int column, int row, int level) {
+        return new Rectangle2D(column * cellWidth(level), row * cellHeight(level), cellWidth(level), cellHeight(level));
+    }
+
+    public static Path getCacheFile() {
+        return Klondike.getDataDirectory().resolve("card_atlas.bin");
+    }
+
+    /**
+     * Loads the atlas from the disk cache, building and caching it from the
+     * individual PNGs when the cache is missing or unreadable. Safe to call
+     * off the FX thread.
+     */
+    public static CardAtlas load() {
+        int width = COLUMNS * Card.WIDTH;
+        int height = ROWS * Card.HEIGHT;
+        byte[] pixels = new byte[width * height * 4];
+        Path cacheFile = getCacheFile();
+        long checksum = imageChecksum();
+        if (!readCache(cacheFile, width, height, checksum, pixels)) {
+            packCardImages(width, pixels);
+            writeCache(cacheFile, width, height, checksum, pixels);
+        }
+        Image[] images = new Image[LEVEL_COUNT];
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            if (level > 0)
+                pixels = downsample(pixels, level);
+            width = COLUMNS * cellWidth(level);
+            height = ROWS * cellHeight(level);
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height, FORMAT, pixels, 0, width * 4);
+            images[level] = image;
+        }
+        return new CardAtlas(images);
+    }
+
+    /**
+     * Averages each 2x2 block of the previous level's premultiplied pixels,
+     * cell by cell so no card bleeds into its neighbours.
+     */
+    private static byte[] downsample(byte[] source, int level) {
+        int sourceCellWidth = cellWidth(level - 1);
+        int sourceCellHeight = cellHeight(level - 1);
+        int sourceStride = COLUMNS * sourceCellWidth * 4;
+        int cellWidth = cellWidth(level);
+        int cellHeight = cellHeight(level);
+        int stride = COLUMNS * cellWidth * 4;
+        byte[] pixels = new byte[stride * ROWS * cellHeight];
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                for (int y = 0; y < cellHeight; y++) {
+                    int sourceOffset = (row * sourceCellHeight + y * 2) * sourceStride + column * sourceCellWidth * 4;
+                    int offset = (row * cellHeight + y) * stride + column * cellWidth * 4;
+                    for (int x = 0; x < cellWidth * 4; x++) {
+                        int left = sourceOffset + (x & ~3) * 2 + (x & 3);
+                        int sum = (source[left] & 0xFF) + (source[left + 4] & 0xFF) +
+                                (source[left + sourceStride] & 0xFF) + (source[left + sourceStride + 4] & 0xFF);
+                        pixels[offset + x] = (byte) ((sum + 2) >> 2);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static String imagePath(int index) {
+        String fileName = index == CardCode.CARD_COUNT ? "card_back" :
+                SUIT_NAMES[index / COLUMNS] + (index % COLUMNS + 1);
+        return "card_images/" + fileName + ".png";
+    }
+
+    /**
+     * Images whose size differs from the cell are scaled into it, so a PNG
+     * a pixel short still fills its cell.
+     */
+    private static void packCardImages(int atlasWidth, byte[] pixels) {
+        IntStream.range(0, CardCode.CARD_COUNT + 1).parallel().forEach(index -> {
+            int column = index == CardCode.CARD_COUNT ? 0 : index % COLUMNS;
+            int row = index == CardCode.CARD_COUNT ? ROWS - 1 : index / COLUMNS;
+            Image cardImage = new Image(imagePath(index), Card.WIDTH, Card.HEIGHT, false, true);
+            if (cardImage.isError())
+                throw new IllegalStateException("Could not load " + imagePath(index), cardImage.getException());
+            int width = Math.min(Card.WIDTH, (int) cardImage.getWidth());
+            int height = Math.min(Card.HEIGHT, (int) cardImage.getHeight());
+            int offset = (row * Card.HEIGHT * atlasWidth + column * Card.WIDTH) * 4;
+            cardImage.getPixelReader().getPixels(0, 0, width, height, FORMAT,
+                    pixels, offset, atlasWidth * 4);
+        });
+    }
+
+    /**
+     * CRC-32 of the bytes of every card image in the high half and their
+     * total length in the low half.
+     */
+    private static long imageChecksum() {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] buffer = new byte[1 << 14];
+        for (int index = 0; index <= CardCode.CARD_COUNT; index++) {
+            try (InputStream in = CardAtlas.class.getClassLoader().getResourceAsStream(imagePath(index))) {
+                if (in == null)
+                    continue;
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    crc.update(buffer, 0, read);
+                    length += read;
+                }
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+        return crc.getValue() << 32 | (length & 0xFFFFFFFFL);
+    }
+
+    private static boolean readCache(Path cacheFile, int width, int height, long checksum, byte[] pixels) {
+        if (!Files.isRegularFile(cacheFile))
+            return false;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16)))) {
+            if (in.readInt() != MAGIC || in.readInt() != width || in.readInt() != height ||
+                    in.readLong() != checksum || checksum == 0)
+                return false;
+            in.readFully(pixels);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable card atlas cache: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, int width, int height, long checksum, byte[] pixels) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(), "card_atlas", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeLong(checksum);
+                out.write(pixels);
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not cache card atlas: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.codecool.klondike;
+
+/**
+ * Packs a card into a single byte: the card index 0..51 (suit-major,
+ * hearts, diamonds, spades, clubs) in the low bits and the face-down flag
+ * in the sign bit. Suit, rank and colour are read from lookup tables.
+ */
+public final class CardCode {
+
+    public static final byte FACE_DOWN = (byte) 0x80;
+    public static final int CARD_COUNT = 52;
+    public static final int RANK_COUNT = 13;
+
+    private static final byte[] SUITS = new byte[CARD_COUNT];
+    private static final byte[] RANKS = new byte[CARD_COUNT];
+    private static final long RED_CARDS = (1L << 2 * RANK_COUNT) - 1;
+
+    static {
+        for (int i = 0; i < CARD_COUNT; i++) {
+            SUITS[i] = (byte) (i / RANK_COUNT + 1);
+            RANKS[i] = (byte) (i % RANK_COUNT + 1);
+        }
+    }
+
+    private CardCode() {
+    }
+
+    public static byte of(int suit, int rank) {
+        return (byte) ((suit - 1) * RANK_COUNT + rank - 1);
+    }
+
+    public static int suit(byte code) {
+        return SUITS[code & 0x7F];
+    }
+
+    public static int rank(byte code) {
+        return RANKS[code & 0x7F];
+    }
+
+    public static boolean isRed(byte code) {
+        return (RED_CARDS & 1L << (code & 0x7F)) != 0;
+    }
+
+    public static boolean isOppositeColor(byte code1, byte code2) {
+        return isRed(code1) != isRed(code2);
+    }
+
+    public static boolean isFaceDown(byte code) {
+        return code < 0;
+    }
+
+    public static byte faceUp(byte code) {
+        return (byte) (code & 0x7F);
+    }
+
+    public static byte faceDown(byte code) {
+        return (byte) (code | FACE_DOWN);
+    }
+
+    public static int index(byte code) {
+        return code & 0x7F;
+    }
+
+    public static byte fromIndex(int index) {
+        return (byte) index;
+    }
+
+    public static String toString(byte code) {
+        return "The Rank" + rank(code) + " of Suit" + suit(code);
+    }
+}
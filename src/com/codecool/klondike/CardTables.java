@@ -0,0 +1,76 @@
+package com.codecool.klondike;
+
+/**
+ * Card compatibility as 52x52 bit tables: row {@code i} holds one bit per
+ * card that card {@code i} may be placed on. Every placement check is a
+ * single shift and mask on a {@link CardCode} index. Long shifts only use
+ * the low six bits of the count, so the face-down flag needs no masking
+ * there.
+ */
+public final class CardTables {
+
+    private static final long[] TABLEAU = new long[CardCode.CARD_COUNT];
+    private static final long[] FOUNDATION = new long[CardCode.CARD_COUNT];
+    private static final long KINGS;
+    private static final long ACES;
+
+    static {
+        long kings = 0;
+        long aces = 0;
+        for (int i = 0; i < CardCode.CARD_COUNT; i++) {
+            byte card = CardCode.fromIndex(i);
+            if (CardCode.rank(card) == CardCode.RANK_COUNT)
+                kings |= 1L << i;
+            if (CardCode.rank(card) == 1)
+                aces |= 1L << i;
+            for (int j = 0; j < CardCode.CARD_COUNT; j++) {
+                byte onto = CardCode.fromIndex(j);
+                if (CardCode.isRed(card) != CardCode.isRed(onto) && CardCode.rank(onto) == CardCode.rank(card) + 1)
+                    TABLEAU[i] |= 1L << j;
+                if (CardCode.suit(card) == CardCode.suit(onto) && CardCode.rank(card) == CardCode.rank(onto) + 1)
+                    FOUNDATION[i] |= 1L << j;
+            }
+        }
+        KINGS = kings;
+        ACES = aces;
+    }
+
+    private CardTables() {
+    }
+
+    /**
+     * Whether {@code card} may be built down on {@code onto} in a tableau
+     * pile: opposite colour, one rank lower.
+     */
+    public static boolean canStack(byte card, byte onto) {
+        return (TABLEAU[card & 0x7F] & 1L << onto) != 0;
+    }
+
+    /**
+     * Whether {@code card} may follow {@code onto} on a foundation: same
+     * suit, one rank higher.
+     */
+    public static boolean canFound(byte card, byte onto) {
+        return (FOUNDATION[card & 0x7F] & 1L << onto) != 0;
+    }
+
+    public static boolean isKing(byte card) {
+        return (KINGS & 1L << card) != 0;
+    }
+
+    public static boolean isAce(byte card) {
+        return (ACES & 1L << card) != 0;
+    }
+
+    /**
+     * The cards {@code card} may be placed on in a tableau pile, as a mask
+     * of card indices.
+     */
+    public static long tableauTargets(byte card) {
+        return TABLEAU[card & 0x7F];
+    }
+
+    public static long foundationTargets(byte card) {
+        return FOUNDATION[card & 0x7F];
+    }
+}
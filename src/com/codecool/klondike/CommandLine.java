@@ -0,0 +1,51 @@
+package com.codecool.klondike;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code key=value} arguments of the command-line tools.
+ */
+public final class CommandLine {
+
+    private CommandLine() {
+    }
+
+    /**
+     * Reads every argument as {@code key=value}. An argument without a key
+     * and an {@code =} prints {@code usage} and exits with status 2.
+     */
+    public static Map<String, String> parse(String[] args, String usage) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split <= 0)
+                fail("Expected key=value but got '" + arg + "'", usage);
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Like {@link #parse(String[], String)}, but an option whose key is not
+     * one of {@code keys} also prints {@code usage} and exits with status 2.
+     */
+    public static Map<String, String> parse(String[] args, String usage, String... keys) {
+        Map<String, String> options = parse(args, usage);
+        for (String key : options.keySet()) {
+            if (!Arrays.asList(keys).contains(key))
+                fail("Unknown option '" + key + "'", usage);
+        }
+        return options;
+    }
+
+    /**
+     * Prints {@code message} and {@code usage} and exits with status 2.
+     */
+    public static void fail(String message, String usage) {
+        System.err.println(message);
+        System.err.println("Usage: " + usage);
+        System.exit(2);
+    }
+}
@@ -0,0 +1,49 @@
+package com.codecool.klondike;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Turns a deal number into a deck order. The shuffle is a Fisher-Yates pass
+ * driven by SplitMix64, so a deal number gives the same layout on every JVM.
+ */
+public final class Deal {
+
+    public static final long MAX_DEAL_NUMBER = 1_000_000_000L;
+
+    private Deal() {
+    }
+
+    public static long randomDealNumber() {
+        return ThreadLocalRandom.current().nextLong(1, MAX_DEAL_NUMBER);
+    }
+
+    public static byte[] shuffle(long dealNumber) {
+        byte[] deck = new byte[CardCode.CARD_COUNT];
+        shuffle(dealNumber, deck);
+        return deck;
+    }
+
+    /**
+     * Writes the deck for {@code dealNumber} into {@code deck}, which must
+     * hold 52 cards. Nothing is allocated.
+     */
+    public static void shuffle(long dealNumber, byte[] deck) {
+        for (int i = 0; i < CardCode.CARD_COUNT; i++) {
+            deck[i] = CardCode.fromIndex(i);
+        }
+        long state = dealNumber;
+        for (int i = CardCode.CARD_COUNT - 1; i > 0; i--) {
+            state += 0x9E3779B97F4A7C15L;
+            int j = (int) (((mix(state) >>> 32) * (i + 1)) >>> 32);
+            byte card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
+        }
+    }
+
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,132 @@
+package com.codecool.klondike;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Memory-mapped library of deals the solver proved winnable, sorted from
+ * easiest to hardest and split into {@link Difficulty} tiers, so a deal of
+ * a given difficulty is picked in O(1). Built by {@link DealLibraryBuilder}.
+ *
+ * <pre>
+ * header : int magic, int version, int drawCount, int redealLimit, int count, int[3] tierStarts
+ * deal   : long dealNumber, int solutionLength, int nodes, short branchingX100, short unused
+ * </pre>
+ */
+public class DealLibrary implements Closeable {
+
+    public enum Difficulty {
+        EASY,
+        MEDIUM,
+        HARD
+    }
+
+    static final int MAGIC = 0x4b4c4442;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private DealLibrary(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a deal library");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported deal library version " + buffer.getInt(4));
+        count = buffer.getInt(16);
+        if (buffer.limit() < HEADER_SIZE + (long) count * RECORD_SIZE)
+            throw new IOException("Truncated deal library");
+    }
+
+    public static DealLibrary open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new DealLibrary(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the deals were solved under the same draw and redeal rules.
+     */
+    public boolean matches(Rules rules) {
+        return buffer.getInt(8) == rules.getDrawCount() && buffer.getInt(12) == rules.getRedealLimit();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int count(Difficulty difficulty) {
+        return tierEnd(difficulty) - tierStart(difficulty);
+    }
+
+    /**
+     * A random deal number of the given difficulty, or -1 if that tier is
+     * empty.
+     */
+    public long pick(Difficulty difficulty) {
+        int start = tierStart(difficulty);
+        int end = tierEnd(difficulty);
+        if (start == end)
+            return -1;
+        return dealNumber(ThreadLocalRandom.current().nextInt(start, end));
+    }
+
+    /**
+     * A random deal number of any difficulty, or -1 if the library is empty.
+     */
+    public long pick() {
+        return count == 0 ? -1 : dealNumber(ThreadLocalRandom.current().nextInt(count));
+    }
+
+    public long dealNumber(int deal) {
+        return buffer.getLong(offset(deal));
+    }
+
+    public int solutionLength(int deal) {
+        return buffer.getInt(offset(deal) + 8);
+    }
+
+    public int nodes(int deal) {
+        return buffer.getInt(offset(deal) + 12);
+    }
+
+    public double branchingFactor(int deal) {
+        return buffer.getShort(offset(deal) + 16) / 100.0;
+    }
+
+    private int tierStart(Difficulty difficulty) {
+        return buffer.getInt(20 + difficulty.ordinal() * 4);
+    }
+
+    private int tierEnd(Difficulty difficulty) {
+        return difficulty.ordinal() + 1 < Difficulty.values().length ?
+                buffer.getInt(24 + difficulty.ordinal() * 4) : count;
+    }
+
+    private int offset(int deal) {
+        if (deal < 0 || deal >= count)
+            throw new IndexOutOfBoundsException("Deal " + deal + " of " + count);
+        return HEADER_SIZE + deal * RECORD_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
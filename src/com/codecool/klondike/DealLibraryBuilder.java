@@ -0,0 +1,205 @@
+package com.codecool.klondike;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Offline pipeline for {@link DealLibrary}. Solves seeded deals on all
+ * cores and appends one fixed-size record per deal, in deal order, to a raw
+ * file; running it again continues after the last deal in that file. The
+ * winnable deals are then compacted into a library sorted by how much
+ * searching the solver needed.
+ *
+ * <pre>java com.codecool.klondike.DealLibraryBuilder deals=100000 raw=deals.raw out=deals.lib [threads=8] [nodes=200000] [time=2000] [draw=3 redeals=2]</pre>
+ *
+ * <pre>
+ * raw header : int magic, int drawCount, int redealLimit
+ * raw deal   : long dealNumber, int solutionLength, int nodes, short branchingX100, byte result, byte unused
+ * </pre>
+ */
+public class DealLibraryBuilder {
+
+    private static final String USAGE =
+            "com.codecool.klondike.DealLibraryBuilder deals=100000 raw=deals.raw out=deals.lib [threads=8] [nodes=200000] [time=2000] [draw=3 redeals=2]";
+
+    private static final int RAW_MAGIC = 0x4b4c4452;
+    private static final int RAW_HEADER_SIZE = 12;
+    private static final int RAW_RECORD_SIZE = 20;
+    private static final int CHUNK_SIZE = 64;
+    private static final int TABLE_BITS = 20;
+
+    private final Rules rules;
+    private final ThreadLocal<Solver> solvers;
+
+    public DealLibraryBuilder(Rules rules, long nodeBudget, long timeBudgetMillis) {
+        this.rules = rules;
+        solvers = ThreadLocal.withInitial(() -> new Solver(null, TABLE_BITS, nodeBudget, timeBudgetMillis));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Map<String, String> options = CommandLine.parse(args, USAGE);
+        long deals = Long.parseLong(options.getOrDefault("deals", "10000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long nodes = Long.parseLong(options.getOrDefault("nodes", "200000"));
+        long time = Long.parseLong(options.getOrDefault("time", "2000"));
+        Path raw = Paths.get(options.getOrDefault("raw", "deals.raw"));
+        Path out = Paths.get(options.getOrDefault("out", "deals.lib"));
+
+        DealLibraryBuilder builder = new DealLibraryBuilder(Rules.fromOptions(options), nodes, time);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            builder.extend(pool, raw, deals);
+        } finally {
+            pool.shutdown();
+        }
+        builder.compact(raw, out);
+    }
+
+    /**
+     * Solves the next {@code deals} deal numbers after the last one already
+     * in {@code raw} and appends their records. A partial record left by an
+     * interrupted run is discarded first.
+     */
+    public void extend(ForkJoinPool pool, Path raw, long deals)
+            throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(raw, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = openRaw(channel);
+            long next = position == RAW_HEADER_SIZE ? 1 :
+                    readLong(channel, position - RAW_RECORD_SIZE) + 1;
+            long end = next + deals;
+
+            long begin = System.nanoTime();
+            long solved = 0;
+            long winnable = 0;
+            int window = pool.getParallelism() * 4;
+            ArrayDeque<ForkJoinTask<ByteBuffer>> inFlight = new ArrayDeque<>();
+            while (next < end || !inFlight.isEmpty()) {
+                while (next < end && inFlight.size() < window) {
+                    long first = next;
+                    int count = (int) Math.min(CHUNK_SIZE, end - next);
+                    inFlight.add(pool.submit(() -> solveChunk(first, count)));
+                    next += count;
+                }
+                ByteBuffer chunk = inFlight.poll().get();
+                for (int offset = 0; offset < chunk.limit(); offset += RAW_RECORD_SIZE) {
+                    if (chunk.get(offset + 18) == Solver.Result.WINNABLE.ordinal())
+                        winnable++;
+                    solved++;
+                }
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("solved=%d winnable=%d total=%d dealsPerSecond=%.1f%n",
+                    solved, winnable, (position - RAW_HEADER_SIZE) / RAW_RECORD_SIZE, solved / seconds);
+        }
+    }
+
+    private long openRaw(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RAW_HEADER_SIZE);
+        if (size < RAW_HEADER_SIZE) {
+            header.putInt(RAW_MAGIC).putInt(rules.getDrawCount()).putInt(rules.getRedealLimit()).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            return RAW_HEADER_SIZE;
+        }
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != RAW_MAGIC)
+            throw new IOException("Not a raw deal file");
+        if (header.getInt() != rules.getDrawCount() || header.getInt() != rules.getRedealLimit())
+            throw new IOException("Raw deal file was built with different rules");
+        long position = size - (size - RAW_HEADER_SIZE) % RAW_RECORD_SIZE;
+        channel.truncate(position);
+        return position;
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        channel.read(buffer, position);
+        return buffer.getLong(0);
+    }
+
+    private ByteBuffer solveChunk(long firstDeal, int count) {
+        Solver solver = solvers.get();
+        byte[] deck = new byte[CardCode.CARD_COUNT];
+        ByteBuffer records = ByteBuffer.allocate(count * RAW_RECORD_SIZE);
+        for (int i = 0; i < count; i++) {
+            Deal.shuffle(firstDeal + i, deck);
+            Solver.Result result = solver.solve(deck, rules);
+            records.putLong(firstDeal + i)
+                    .putInt(solver.getSolutionLength())
+                    .putInt((int) Math.min(Integer.MAX_VALUE, solver.getNodeCount()))
+                    .putShort((short) Math.min(Short.MAX_VALUE, Math.round(solver.getBranchingFactor() * 100)))
+                    .put((byte) result.ordinal())
+                    .put((byte) 0);
+        }
+        records.flip();
+        return records;
+    }
+
+    /**
+     * Writes the winnable deals of {@code raw} to {@code out}, easiest
+     * first, split into three equally sized tiers. The library is written
+     * next to {@code out} and moved into place when complete.
+     */
+    public void compact(Path raw, Path out) throws IOException {
+        try (FileChannel channel = FileChannel.open(raw, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            int records = (int) ((channel.size() - RAW_HEADER_SIZE) / RAW_RECORD_SIZE);
+
+            long[] order = new long[records];
+            int winnable = 0;
+            for (int i = 0; i < records; i++) {
+                int offset = RAW_HEADER_SIZE + i * RAW_RECORD_SIZE;
+                if (buffer.get(offset + 18) == Solver.Result.WINNABLE.ordinal())
+                    order[winnable++] = (long) buffer.getInt(offset + 12) << 32 | i;
+            }
+            Arrays.sort(order, 0, winnable);
+
+            Path temp = out.resolveSibling(out.getFileName() + ".tmp");
+            try (DataOutputStream library = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                library.writeInt(DealLibrary.MAGIC);
+                library.writeInt(DealLibrary.VERSION);
+                library.writeInt(buffer.getInt(4));
+                library.writeInt(buffer.getInt(8));
+                library.writeInt(winnable);
+                for (int tier = 0; tier < DealLibrary.Difficulty.values().length; tier++) {
+                    library.writeInt(winnable * tier / DealLibrary.Difficulty.values().length);
+                }
+                for (int i = 0; i < winnable; i++) {
+                    int offset = RAW_HEADER_SIZE + (int) order[i] * RAW_RECORD_SIZE;
+                    library.writeLong(buffer.getLong(offset));
+                    library.writeInt(buffer.getInt(offset + 8));
+                    library.writeInt(buffer.getInt(offset + 12));
+                    library.writeShort(buffer.getShort(offset + 16));
+                    library.writeShort(0);
+                }
+            }
+            Files.move(temp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.printf("library=%s deals=%d of %d%n", out, winnable, records);
+        }
+    }
+}
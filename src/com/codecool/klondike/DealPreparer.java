@@ -0,0 +1,158 @@
+package com.codecool.klondike;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Gets the next deal ready on a background thread while the current one is
+ * played. It picks the deal number, shuffles it and deals it into a
+ * {@link GameState}. In winnable-only mode it keeps drawing deal numbers
+ * until the {@link Solver} proves one winnable. A restart on the FX thread
+ * then only has to copy the prepared state and lay out the cards.
+ * Changing the deal source or mode cancels the deal in progress.
+ */
+public class DealPreparer {
+
+    private static final int SOLVER_TABLE_BITS = 20;
+    private static final long SOLVER_NODE_BUDGET = 200_000;
+    private static final long SOLVER_TIME_BUDGET_MILLIS = 2_000;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deal-preparer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Rules rules;
+    private volatile LongSupplier dealSource;
+    private volatile boolean winnableOnly;
+    private volatile LongSupplier provenDeals;
+    private Solver solver;
+    private CompletableFuture<Prepared> next;
+
+    public static final class Prepared {
+
+        private final long dealNumber;
+        private final GameState state;
+
+        private Prepared(long dealNumber, GameState state) {
+            this.dealNumber = dealNumber;
+            this.state = state;
+        }
+
+        public long getDealNumber() {
+            return dealNumber;
+        }
+
+        /**
+         * The freshly dealt position, ready to be copied into the game.
+         */
+        public GameState getState() {
+            return state;
+        }
+    }
+
+    public DealPreparer(Rules rules, LongSupplier dealSource) {
+        this.rules = rules;
+        this.dealSource = dealSource;
+        next = schedule();
+    }
+
+    /**
+     * Switches to another source of deal numbers. The deal already being
+     * prepared is thrown away.
+     */
+    public void setDealSource(LongSupplier dealSource) {
+        this.dealSource = dealSource;
+        reschedule();
+    }
+
+    /**
+     * Only hands out deals the solver proved winnable.
+     */
+    public void setWinnableOnly(boolean winnableOnly) {
+        this.winnableOnly = winnableOnly;
+        reschedule();
+    }
+
+    /**
+     * Deal numbers already known to be winnable, such as from a
+     * {@link DealLibrary}, handed out in winnable-only mode while the solver
+     * is still searching. Without them {@link #take} waits for the solver.
+     */
+    public void setProvenDeals(LongSupplier provenDeals) {
+        this.provenDeals = provenDeals;
+    }
+
+    /**
+     * Hands over the prepared deal and starts on the one after it. If the
+     * background thread is not done yet, for example while the solver is
+     * still searching, a plain deal is made right away, or a proven one in
+     * winnable-only mode, so a restart does not wait. The deal still in
+     * progress is kept for the next call. In winnable-only mode without
+     * proven deals it waits for the search to finish.
+     */
+    public Prepared take() {
+        Prepared prepared = next.getNow(null);
+        if (prepared == null) {
+            LongSupplier proven = provenDeals;
+            if (!winnableOnly)
+                return deal(dealSource.getAsLong());
+            if (proven != null)
+                return deal(proven.getAsLong());
+            prepared = next.join();
+        }
+        next = schedule();
+        return prepared;
+    }
+
+    private void reschedule() {
+        next.cancel(false);
+        next = schedule();
+    }
+
+    private CompletableFuture<Prepared> schedule() {
+        LongSupplier source = dealSource;
+        boolean winnable = winnableOnly;
+        CompletableFuture<Prepared> future = new CompletableFuture<>();
+        WORKER.execute(() -> {
+            try {
+                if (!future.isCancelled())
+                    future.complete(prepare(source, winnable, future));
+            } catch (CancellationException e) {
+                future.cancel(false);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Draws deal numbers until the solver proves one winnable, checking
+     * between attempts whether {@code future} was cancelled.
+     */
+    private Prepared prepare(LongSupplier source, boolean winnable, CompletableFuture<Prepared> future) {
+        if (!winnable)
+            return deal(source.getAsLong());
+        if (solver == null)
+            solver = new Solver(null, SOLVER_TABLE_BITS, SOLVER_NODE_BUDGET, SOLVER_TIME_BUDGET_MILLIS);
+        while (true) {
+            Prepared prepared = deal(source.getAsLong());
+            if (solver.solve(prepared.getState()) == Solver.Result.WINNABLE)
+                return prepared;
+            if (future.isCancelled())
+                throw new CancellationException();
+        }
+    }
+
+    private Prepared deal(long dealNumber) {
+        GameState state = new GameState(rules);
+        state.deal(Deal.shuffle(dealNumber));
+        return new Prepared(dealNumber, state);
+    }
+}
@@ -0,0 +1,100 @@
+package com.codecool.klondike;
+
+/**
+ * Uniform grid over the table that maps a point to the piles whose drop
+ * zones cover it, kept as one int per cell with a bit per pile, so any
+ * number of zones may overlap. Zones are registered once from the pile
+ * layout; lookups are a single array read.
+ */
+public class DropZoneIndex {
+
+    public static final int NONE = -1;
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cells;
+    private final double[] centerX = new double[GameState.PILE_COUNT];
+    private final double[] centerY = new double[GameState.PILE_COUNT];
+
+    public DropZoneIndex(double width, double height, double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil(width / cellSize);
+        this.rows = (int) Math.ceil(height / cellSize);
+        this.cells = new int[columns * rows];
+    }
+
+    /**
+     * The zones of the foundations and tableau piles of {@code layout}: each
+     * reaches half a card past the pile on every side, and a tableau zone
+     * runs down to the bottom of the table. {@code cellSize} should scale
+     * with the table so the cells stay small next to the zones.
+     */
+    public static DropZoneIndex forLayout(TableLayout layout, double cellSize) {
+        double cardWidth = layout.getCardWidth();
+        double cardHeight = layout.getCardHeight();
+        DropZoneIndex index = new DropZoneIndex(layout.getWidth(), layout.getHeight(), cellSize);
+        for (int pile = GameState.FOUNDATION; pile < GameState.PILE_COUNT; pile++) {
+            double height = GameState.isTableau(pile) ? layout.getHeight() - layout.pileY(pile) : cardHeight;
+            index.addZone(pile, layout.pileX(pile) - cardWidth / 2.0, layout.pileY(pile) - cardHeight / 2.0,
+                    cardWidth * 2, height + cardHeight, layout.pileY(pile) + cardHeight / 2.0);
+        }
+        return index;
+    }
+
+    /**
+     * Registers the zone of {@code pile}. {@code anchorY} is the height a
+     * dropped card is measured from when zones overlap, normally the middle
+     * of the pile's first card.
+     */
+    public void addZone(int pile, double x, double y, double width, double height, double anchorY) {
+        centerX[pile] = x + width / 2;
+        centerY[pile] = anchorY;
+        int firstColumn = Math.max(0, (int) (x / cellSize));
+        int lastColumn = Math.min(columns - 1, (int) ((x + width) / cellSize));
+        int firstRow = Math.max(0, (int) (y / cellSize));
+        int lastRow = Math.min(rows - 1, (int) ((y + height) / cellSize));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                cells[row * columns + column] |= 1 << pile;
+            }
+        }
+    }
+
+    /**
+     * Candidate piles at {@code (x, y)} as a bit set; walk it with
+     * {@link #first} and {@link #rest}.
+     */
+    public int candidates(double x, double y) {
+        if (x < 0 || y < 0)
+            return 0;
+        int column = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (column >= columns || row >= rows)
+            return 0;
+        return cells[row * columns + column];
+    }
+
+    /**
+     * How far {@code (x, y)} is from the anchor of {@code pile}, to choose
+     * between overlapping zones.
+     */
+    public double distance(int pile, double x, double y) {
+        return Math.hypot(centerX[pile] - x, centerY[pile] - y);
+    }
+
+    /**
+     * The lowest pile in {@code candidates}, or {@link #NONE} once they run
+     * out.
+     */
+    public static int first(int candidates) {
+        return candidates == 0 ? NONE : Integer.numberOfTrailingZeros(candidates);
+    }
+
+    /**
+     * {@code candidates} without its {@link #first} pile.
+     */
+    public static int rest(int candidates) {
+        return candidates & candidates - 1;
+    }
+}
@@ -0,0 +1,163 @@
+package com.codecool.klondike;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped table of solved endgame positions: few face-down tableau
+ * cards and a short stock and waste. Positions are keyed by their canonical
+ * {@link Zobrist} hash through a hash-and-displace perfect hash, so a probe
+ * reads one displacement and one six-byte entry. The perfect hash already
+ * gives every stored position its own slot, so an entry keeps only a 40-bit
+ * fingerprint of the hash next to the value instead of the whole key, 6
+ * bytes per slot rather than 9. A position that is not in the table is taken
+ * for one only if its fingerprint matches the slot it lands in, about once
+ * in 2^40 probes. Built by {@link EndgameTablebaseBuilder}.
+ *
+ * <pre>
+ * header        : int magic, int version, int drawCount, int redealLimit, int maxFaceDown,
+ *                 int maxStockAndWaste, int bucketCount, int slotCount
+ * displacements : short[bucketCount]
+ * entries       : slotCount * (40-bit fingerprint, byte value)
+ * </pre>
+ *
+ * A value of 0 marks an empty slot, 1 means the position is lost and
+ * 2 + n means it is won in at most n moves.
+ */
+public class EndgameTablebase implements Closeable {
+
+    public static final int UNKNOWN = -2;
+    public static final int LOST = -1;
+
+    static final int MAGIC = 0x4b4c4542;
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 6;
+    static final int EMPTY_VALUE = 0;
+    static final int LOST_VALUE = 1;
+    static final int WON_VALUE = 2;
+    static final int MAX_DISTANCE = 0xFF - WON_VALUE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int maxFaceDown;
+    private final int maxStockAndWaste;
+    private final int bucketCount;
+    private final int slotCount;
+    private final int entriesOffset;
+
+    private EndgameTablebase(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not an endgame tablebase");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported endgame tablebase version " + buffer.getInt(4));
+        maxFaceDown = buffer.getInt(16);
+        maxStockAndWaste = buffer.getInt(20);
+        bucketCount = buffer.getInt(24);
+        slotCount = buffer.getInt(28);
+        entriesOffset = HEADER_SIZE + bucketCount * 2;
+        if (buffer.limit() < entriesOffset + (long) slotCount * ENTRY_SIZE)
+            throw new IOException("Truncated endgame tablebase");
+    }
+
+    public static EndgameTablebase open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new EndgameTablebase(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean matches(Rules rules) {
+        return buffer.getInt(8) == rules.getDrawCount() && buffer.getInt(12) == rules.getRedealLimit();
+    }
+
+    public int size() {
+        return slotCount;
+    }
+
+    public boolean isEndgame(GameState state) {
+        return isEndgame(state, maxFaceDown, maxStockAndWaste);
+    }
+
+    static boolean isEndgame(GameState state, int maxFaceDown, int maxStockAndWaste) {
+        return !state.isWon() &&
+                state.size(GameState.STOCK) + state.size(GameState.DISCARD) <= maxStockAndWaste &&
+                state.faceDownCount() <= maxFaceDown;
+    }
+
+    /**
+     * Looks up a position by its {@link Zobrist} hash. Returns the number
+     * of moves to a win, {@link #LOST}, or {@link #UNKNOWN} if the position
+     * is not in the table.
+     */
+    public int probe(long hash) {
+        if (slotCount == 0)
+            return UNKNOWN;
+        int displacement = buffer.getShort(HEADER_SIZE + bucket(hash, bucketCount) * 2) & 0xFFFF;
+        int entry = entriesOffset + slot(hash, displacement, slotCount) * ENTRY_SIZE;
+        int value = buffer.get(entry + ENTRY_SIZE - 1) & 0xFF;
+        long fingerprint = (buffer.getInt(entry) & 0xFFFFFFFFL) << 8 | buffer.get(entry + 4) & 0xFF;
+        if (value == EMPTY_VALUE || fingerprint != fingerprint(hash))
+            return UNKNOWN;
+        return value == LOST_VALUE ? LOST : value - WON_VALUE;
+    }
+
+    public int probe(GameState state) {
+        return isEndgame(state) ? probe(state.hash()) : UNKNOWN;
+    }
+
+    /**
+     * The move leading to the quickest known win from {@code state}, or 0
+     * if no successor is in the table as won. {@code scratch} is used for
+     * trying the moves so {@code state} and its listeners are untouched.
+     */
+    public int bestMove(GameState state, GameState scratch, int[] moves) {
+        scratch.copyFrom(state);
+        int count = scratch.generateMoves(moves);
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int applied = scratch.applyMove(moves[i]);
+            int distance = scratch.isWon() ? 0 : probe(scratch);
+            scratch.undoMove(applied);
+            if (distance >= 0 && distance < bestDistance) {
+                best = moves[i];
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    static int bucket(long hash, int bucketCount) {
+        return (int) Long.remainderUnsigned(hash >>> 32, bucketCount);
+    }
+
+    static int slot(long hash, int displacement, int slotCount) {
+        return (int) Long.remainderUnsigned(Deal.mix(hash + displacement * 0x9E3779B97F4A7C15L), slotCount);
+    }
+
+    /**
+     * The 40 bits of {@code hash} an entry keeps, remixed so they do not
+     * repeat the bits that chose the bucket.
+     */
+    static long fingerprint(long hash) {
+        return Deal.mix(hash) >>> 24;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
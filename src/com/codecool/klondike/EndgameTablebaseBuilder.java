@@ -0,0 +1,226 @@
+package com.codecool.klondike;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Offline builder for {@link EndgameTablebase}. Plays seeded deals with a
+ * {@link PlayPolicy} and solves every endgame position the games pass
+ * through, on all cores. The proven results are then written as a
+ * hash-and-displace perfect hash.
+ *
+ * <pre>java com.codecool.klondike.EndgameTablebaseBuilder deals=10000 start=1 faceDown=3 stock=8 nodes=200000 time=2000 policy=greedy out=endgame.tb [draw=3 redeals=2]</pre>
+ */
+public class EndgameTablebaseBuilder {
+
+    private static final String USAGE =
+            "com.codecool.klondike.EndgameTablebaseBuilder deals=10000 start=1 faceDown=3 stock=8 nodes=200000 time=2000 policy=greedy out=endgame.tb [draw=3 redeals=2]";
+
+    private static final double LOAD_FACTOR = 0.85;
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final int MAX_DISPLACEMENT = 0xFFFF;
+    private static final int TABLE_BITS = 18;
+    private static final int CHUNK_SIZE = 16;
+    private static final int MAX_MOVES_PER_GAME = 1000;
+
+    private final Rules rules;
+    private final PlayPolicy policy;
+    private final int maxFaceDown;
+    private final int maxStockAndWaste;
+    private final ThreadLocal<Solver> solvers;
+
+    public EndgameTablebaseBuilder(Rules rules, PlayPolicy policy, int maxFaceDown, int maxStockAndWaste,
+                                   long nodeBudget, long timeBudgetMillis) {
+        this.rules = rules;
+        this.policy = policy;
+        this.maxFaceDown = maxFaceDown;
+        this.maxStockAndWaste = maxStockAndWaste;
+        solvers = ThreadLocal.withInitial(() -> new Solver(null, TABLE_BITS, nodeBudget, timeBudgetMillis));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Map<String, String> options = CommandLine.parse(args, USAGE);
+        long deals = Long.parseLong(options.getOrDefault("deals", "10000"));
+        long start = Long.parseLong(options.getOrDefault("start", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        EndgameTablebaseBuilder builder = new EndgameTablebaseBuilder(Rules.fromOptions(options),
+                PlayPolicy.byName(options.getOrDefault("policy", "greedy")),
+                Integer.parseInt(options.getOrDefault("faceDown", "3")),
+                Integer.parseInt(options.getOrDefault("stock", "8")),
+                Long.parseLong(options.getOrDefault("nodes", "200000")),
+                Long.parseLong(options.getOrDefault("time", "2000")));
+
+        long begin = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Map<Long, Integer> results;
+        try {
+            results = builder.collect(pool, start, deals);
+        } finally {
+            pool.shutdown();
+        }
+        Path out = Paths.get(options.getOrDefault("out", "endgame.tb"));
+        builder.write(results, out);
+        long won = results.values().stream().filter(value -> value >= 0).count();
+        System.out.printf("positions=%d won=%d lost=%d seconds=%.1f%n",
+                results.size(), won, results.size() - won, (System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * Solves the endgame positions reached in {@code deals} games and maps
+     * each position's hash to its distance to a win or
+     * {@link EndgameTablebase#LOST}. Positions the solver could not settle
+     * within its budget are left out.
+     */
+    public Map<Long, Integer> collect(ForkJoinPool pool, long start, long deals)
+            throws InterruptedException, ExecutionException {
+        List<Future<Map<Long, Integer>>> chunks = new ArrayList<>();
+        for (long first = start; first < start + deals; first += CHUNK_SIZE) {
+            long chunkStart = first;
+            int count = (int) Math.min(CHUNK_SIZE, start + deals - first);
+            chunks.add(pool.submit(() -> collectChunk(chunkStart, count)));
+        }
+        Map<Long, Integer> results = new HashMap<>();
+        for (Future<Map<Long, Integer>> chunk : chunks) {
+            results.putAll(chunk.get());
+        }
+        return results;
+    }
+
+    private Map<Long, Integer> collectChunk(long firstDeal, int count) {
+        Solver solver = solvers.get();
+        Map<Long, Integer> results = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        GameState state = new GameState(rules);
+        int[] moves = new int[GameState.MAX_MOVES];
+        for (long deal = firstDeal; deal < firstDeal + count; deal++) {
+            state.deal(Deal.shuffle(deal));
+            SplittableRandom random = new SplittableRandom(Deal.mix(deal));
+            for (int played = 0; played < MAX_MOVES_PER_GAME && !state.isWon(); played++) {
+                if (EndgameTablebase.isEndgame(state, maxFaceDown, maxStockAndWaste) &&
+                        seen.add(state.hash())) {
+                    Solver.Result result = solver.solve(state);
+                    if (result == Solver.Result.WINNABLE) {
+                        results.put(state.hash(),
+                                Math.min(solver.getSolutionLength(), EndgameTablebase.MAX_DISTANCE));
+                    } else if (result == Solver.Result.UNWINNABLE) {
+                        results.put(state.hash(), EndgameTablebase.LOST);
+                    }
+                }
+                int choice = policy.choose(state, moves, state.generateMoves(moves), random);
+                if (choice < 0)
+                    break;
+                state.applyMove(moves[choice]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Places every key with hash and displace: buckets are filled largest
+     * first, each trying displacements until all its keys land in free
+     * slots. Written to a temp file and moved into place when complete.
+     */
+    public void write(Map<Long, Integer> results, Path out) throws IOException {
+        int keyCount = results.size();
+        int slotCount = keyCount == 0 ? 0 : (int) Math.ceil(keyCount / LOAD_FACTOR);
+        int bucketCount = Math.max(1, (keyCount + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+
+        long[][] buckets = new long[bucketCount][];
+        int[] bucketSizes = new int[bucketCount];
+        for (long key : results.keySet()) {
+            bucketSizes[EndgameTablebase.bucket(key, bucketCount)]++;
+        }
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            buckets[bucket] = new long[bucketSizes[bucket]];
+            bucketSizes[bucket] = 0;
+        }
+        for (long key : results.keySet()) {
+            int bucket = EndgameTablebase.bucket(key, bucketCount);
+            buckets[bucket][bucketSizes[bucket]++] = key;
+        }
+        Integer[] order = new Integer[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            order[bucket] = bucket;
+        }
+        Arrays.sort(order, (a, b) -> buckets[b].length - buckets[a].length);
+
+        short[] displacements = new short[bucketCount];
+        long[] keysBySlot = new long[slotCount];
+        byte[] values = new byte[slotCount];
+        int[] slots = new int[KEYS_PER_BUCKET * 8];
+        for (int bucket : order) {
+            long[] keys = buckets[bucket];
+            if (keys.length == 0)
+                break;
+            if (slots.length < keys.length)
+                slots = new int[keys.length];
+            int displacement = place(keys, values, slots);
+            displacements[bucket] = (short) displacement;
+            for (int i = 0; i < keys.length; i++) {
+                int distance = results.get(keys[i]);
+                int value = distance == EndgameTablebase.LOST ?
+                        EndgameTablebase.LOST_VALUE : EndgameTablebase.WON_VALUE + distance;
+                keysBySlot[slots[i]] = keys[i];
+                values[slots[i]] = (byte) value;
+            }
+        }
+
+        Path temp = out.resolveSibling(out.getFileName() + ".tmp");
+        try (DataOutputStream file = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            file.writeInt(EndgameTablebase.MAGIC);
+            file.writeInt(EndgameTablebase.VERSION);
+            file.writeInt(rules.getDrawCount());
+            file.writeInt(rules.getRedealLimit());
+            file.writeInt(maxFaceDown);
+            file.writeInt(maxStockAndWaste);
+            file.writeInt(bucketCount);
+            file.writeInt(slotCount);
+            for (short displacement : displacements) {
+                file.writeShort(displacement);
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                long fingerprint = EndgameTablebase.fingerprint(keysBySlot[slot]);
+                file.writeInt((int) (fingerprint >>> 8));
+                file.writeByte((int) fingerprint);
+                file.writeByte(values[slot]);
+            }
+        }
+        Files.move(temp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int place(long[] keys, byte[] values, int[] slots) throws IOException {
+        for (int displacement = 0; displacement <= MAX_DISPLACEMENT; displacement++) {
+            boolean free = true;
+            for (int i = 0; i < keys.length && free; i++) {
+                slots[i] = EndgameTablebase.slot(keys[i], displacement, values.length);
+                if (values[slots[i]] != EndgameTablebase.EMPTY_VALUE)
+                    free = false;
+                for (int j = 0; j < i && free; j++) {
+                    if (slots[j] == slots[i])
+                        free = false;
+                }
+            }
+            if (free)
+                return displacement;
+        }
+        throw new IOException("No perfect hash displacement found for a bucket of " + keys.length);
+    }
+}
@@ -0,0 +1,128 @@
+package com.codecool.klondike;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer, single-consumer ring buffer of timestamped events, shared
+ * by {@link MoveEventLog} and {@link GameEventStream}. The game thread only
+ * writes two longs per event, the wall-clock time and a packed payload; a
+ * daemon thread hands what has queued up to a {@link Sink} in batches. When
+ * the ring is full new events are dropped and counted rather than blocking
+ * the game.
+ */
+public class EventRing {
+
+    private final long[] ring;
+    private final int capacity;
+    private final int maxBatch;
+    private final long idleParkNanos;
+    private final Sink sink;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread drainer;
+    private volatile long dropped;
+    private volatile boolean closed;
+
+    /**
+     * Receives events on the drainer thread.
+     */
+    public interface Sink {
+
+        /**
+         * Handles the events at positions {@code from} to {@code end - 1},
+         * read with {@link #time} and {@link #payload}. They may be
+         * overwritten once this returns. Returning false stops draining.
+         */
+        boolean drain(EventRing ring, long from, long end);
+
+        /**
+         * Called once after the last batch when the ring is closed.
+         */
+        void closed();
+    }
+
+    /**
+     * Starts the drainer thread. {@code capacity} must be a power of two.
+     */
+    public EventRing(String name, int capacity, int maxBatch, long idleParkNanos, Sink sink) {
+        this.ring = new long[capacity * 2];
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.idleParkNanos = idleParkNanos;
+        this.sink = sink;
+        drainer = new Thread(this::drainLoop, name);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Queues an event stamped with the current time. Only one thread may
+     * append.
+     */
+    public void append(long payload) {
+        long position = tail.get();
+        if (position - head.get() == capacity) {
+            dropped++;
+            return;
+        }
+        int slot = slot(position);
+        ring[slot] = System.currentTimeMillis();
+        ring[slot + 1] = payload;
+        tail.lazySet(position + 1);
+    }
+
+    public long time(long position) {
+        return ring[slot(position)];
+    }
+
+    public long payload(long position) {
+        return ring[slot(position) + 1];
+    }
+
+    /**
+     * Events lost because the ring was full.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    private int slot(long position) {
+        return (int) (position & (capacity - 1)) * 2;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            long position = head.get();
+            long end = Math.min(tail.get(), position + maxBatch);
+            if (position == end) {
+                if (closed && tail.get() == position)
+                    break;
+                if (!closed)
+                    LockSupport.parkNanos(this, idleParkNanos);
+                continue;
+            }
+            boolean draining = sink.drain(this, position, end);
+            head.lazySet(end);
+            if (!draining)
+                return;
+        }
+        sink.closed();
+    }
+
+    /**
+     * Drains what is still queued and stops the background thread, waiting
+     * at most a second for it. An interrupt stops the wait and is kept on
+     * the calling thread.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package com.codecool.klondike;
 
+import javafx.animation.Animation;
+import javafx.animation.Interpolator;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.collections.FXCollections;
 import javafx.event.EventHandler;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.image.Image;
@@ -13,18 +22,42 @@ import javafx.scene.layout.BackgroundRepeat;
 import javafx.scene.layout.BackgroundSize;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-
-public class Game extends Pane {
-
-    private List<Card> deck;
+import java.util.function.LongSupplier;
+
+public class Game extends Pane implements GameView {
+
+    private final Card[] cards = new Card[CardCode.CARD_COUNT];
+    private List<Node> tableNodes;
+    private long dealNumber;
+    private Rules rules;
+    private GameState state;
+    private MoveLog moveLog = new MoveLog();
+    private MoveIndex moveIndex;
+    private EndgameTablebase tablebase;
+    private GameState hintState;
+    private int[] hintMoves;
+    private int score;
+    private Text scoreText;
+    private MoveEventLog eventLog = MoveEventLog.DISABLED;
+    private GameEventStream eventStream = GameEventStream.DISABLED;
+    private DealPreparer nextDeal;
+    private final Timeline autoCompleteTimeline = new Timeline();
+    private int[] autoCompleteMoves = new int[CardCode.CARD_COUNT * 4];
+    private Button finishBtn;
+    private final TableLayout layout = new TableLayout();
+    private DropZoneIndex dropZones;
+    private Pile highlightedPile;
 
     private Pile stockPile;
     private Pile discardPile;
@@ -34,18 +67,45 @@ public class Game extends Pane {
     private double dragStartX, dragStartY;
     private List<Card> draggedCards = FXCollections.observableArrayList();
 
-    private static double STOCK_GAP = 1;
-    private static double FOUNDATION_GAP = 0;
-    private static double TABLEAU_GAP = 30;
     private static double HIDDEN_GAP = 0;
+    private static final Duration HINT_DURATION = Duration.seconds(1);
+    private static final double DROP_ZONE_CELL = 30;
+    /**
+     * Where a dragged tableau run is held from its top-left corner, in
+     * design units of {@link TableLayout}.
+     */
+    private static final double DRAG_GRAB_OFFSET = 50;
+    private static final Duration AUTO_COMPLETE_STAGGER = Duration.millis(12);
+    private static final Duration AUTO_COMPLETE_SLIDE = Duration.millis(200);
 
     public Game() {
-        deck = Card.createNewDeck();
+        this(Deal.randomDealNumber());
+    }
+
+    public Game(long dealNumber) {
+        this(dealNumber, Rules.DEFAULT);
+    }
+
+    public Game(long dealNumber, Rules rules) {
+        this.rules = rules;
+        state = new GameState(rules);
+        moveIndex = new MoveIndex(state);
+        this.dealNumber = dealNumber;
+        for (int i = 0; i < cards.length; i++) {
+            byte code = CardCode.fromIndex(i);
+            cards[i] = new Card(CardCode.suit(code), CardCode.rank(code), true);
+            addMouseEventHandlers(cards[i]);
+        }
+        nextDeal = new DealPreparer(rules, Deal::randomDealNumber);
         initPiles();
+        tableNodes = new ArrayList<>(getChildren());
         dealCards();
     }
 
-    private EventHandler<MouseEvent> onMouseClickedHandler = e -> {
+    private EventHandler<MouseEvent> onMouseClickedHandler = Metrics.timed(Metrics.MOUSE_CLICKED, e -> {
+        if (isAutoCompleting())
+            return;
+        completeSlides();
         Card card = (Card) e.getSource();
         if (e.getClickCount() == 2 && card == card.getContainingPile().getTopCard() &&
                 !card.getContainingPile().getPileType().equals(Pile.PileType.STOCK)) {
@@ -59,15 +119,11 @@ public class Game extends Pane {
             return;
         }
         if (card != null && card.getContainingPile().getPileType() == Pile.PileType.STOCK) {
-            card = card.getContainingPile().getTopCard();
-            card.moveToPile(discardPile);
-            if (card.isFaceDown()) {
-                card.flip();
-            }
-            card.setMouseTransparent(false);
-            System.out.println("Placed " + card + " to the waste.");
+            int count = GameState.moveCount(state.drawMove());
+            applyToState(stockPile, discardPile, count);
+            moveTopCards(stockPile, discardPile, count, false);
         }
-    };
+    });
 
     private EventHandler<MouseEvent> stockReverseCardsHandler = e -> {
         if (stockPile.isEmpty()) {
@@ -76,11 +132,14 @@ public class Game extends Pane {
     };
 
     private EventHandler<MouseEvent> onMousePressedHandler = e -> {
+        completeSlides();
         dragStartX = e.getSceneX();
         dragStartY = e.getSceneY();
     };
 
-    private EventHandler<MouseEvent> onMouseDraggedHandler = e -> {
+    private EventHandler<MouseEvent> onMouseDraggedHandler = Metrics.timed(Metrics.MOUSE_DRAGGED, e -> {
+        if (isAutoCompleting())
+            return;
         Card card = (Card) e.getSource();
         Pile activePile = card.getContainingPile();
 
@@ -104,8 +163,9 @@ public class Game extends Pane {
                 draggedCards.remove(activePileCard);
             }
 
-            offsetX = e.getSceneX() - dragStartX - 50;
-            offsetY = e.getSceneY() - dragStartY - 50;
+            double grabOffset = DRAG_GRAB_OFFSET * layout.getScale();
+            offsetX = e.getSceneX() - dragStartX - grabOffset;
+            offsetY = e.getSceneY() - dragStartY - grabOffset;
             for (Card draggedCard : draggedCards) {
 
                 draggedCard.getDropShadow().setOffsetX(0);
@@ -121,24 +181,29 @@ public class Game extends Pane {
             return;
         }
 
-        card.getDropShadow().setRadius(20);
-        card.getDropShadow().setOffsetX(10);
-        card.getDropShadow().setOffsetY(10);
+        card.getDropShadow().setRadius(20 * layout.getScale());
+        card.getDropShadow().setOffsetX(10 * layout.getScale());
+        card.getDropShadow().setOffsetY(10 * layout.getScale());
 
         card.toFront();
         card.setTranslateX(offsetX);
         card.setTranslateY(offsetY);
-    };
 
-    private EventHandler<MouseEvent> onMouseReleasedHandler = e -> {
+        Pile target = findDropTarget(card, draggedCards.size() == 1);
+        highlightDropTarget(target == activePile ? null : target);
+    });
+
+    private EventHandler<MouseEvent> onMouseReleasedHandler = Metrics.timed(Metrics.MOUSE_RELEASED, e -> {
         if (draggedCards.isEmpty())
             return;
+        completeSlides();
         Card card = (Card) e.getSource();
-        List<Pile> bothPiles = new ArrayList<>(tableauPiles);
-        Pile pile = getValidIntersectingPile(card, bothPiles);
+        highlightDropTarget(null);
+        Pile pile = findDropTarget(card, false);
         if (draggedCards.size() > 1) {
             Pile additionalPile = new Pile(Pile.PileType.HIDDEN, "", HIDDEN_GAP);
             if (isMoveValid(draggedCards.get(0), pile)) {
+                applyToState(draggedCards.get(0).getContainingPile(), pile, draggedCards.size());
                 moveCardsToPile(pile);
             } else {
                 moveCardsToPile(additionalPile);
@@ -147,8 +212,7 @@ public class Game extends Pane {
                 moveCardsToPile(pile);
             }
         } else {
-            bothPiles.addAll(foundationPiles);
-            pile = getValidIntersectingPile(card, bothPiles);
+            pile = findDropTarget(card, true);
             if (pile != null) {
                 handleValidMove(card, pile);
             } else {
@@ -157,10 +221,7 @@ public class Game extends Pane {
             }
         }
         draggedCards.clear();
-        if (pile.getPileType().equals(Pile.PileType.FOUNDATION)) {
-            if (isGameWon() && pile.numOfCards() == 12) showModal("Congratulations!");
-        }
-    };
+    });
 
     private void moveCardsToPile(Pile pile){
         for (Card draggedCard : draggedCards) {
@@ -168,13 +229,286 @@ public class Game extends Pane {
         }
     }
 
+    @Override
     public boolean isGameWon() {
-        int s = 0;
-        for (Pile pile: foundationPiles) {
-            if (pile.numOfCards() == 13) s++;
-            if (s == 3) return true;
+        return state.isWon();
+    }
+
+    public long getDealNumber() {
+        return dealNumber;
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * The pile on the table at a {@link GameState} pile index.
+     */
+    public Pile getPile(int index) {
+        return pileAt(index);
+    }
+
+    private int pileIndex(Pile pile) {
+        return pile == null ? -1 : pile.getIndex();
+    }
+
+    private void applyToState(Pile sourcePile, Pile destPile, int count) {
+        if (sourcePile == destPile || count == 0)
+            return;
+        int move = state.applyMove(GameState.move(pileIndex(sourcePile), pileIndex(destPile), count));
+        moveLog.record(move);
+        eventLog.move(move, state);
+        eventStream.move(move, state);
+        addScore(rules.score(move));
+        updateFinishButton();
+        if (isGameWon()) showModal("Congratulations!");
+    }
+
+    private void addScore(int points) {
+        score += points;
+        if (scoreText != null)
+            scoreText.setText("Score: " + score);
+    }
+
+    private void updateFinishButton() {
+        finishBtn.setVisible(!isAutoCompleting() && AutoComplete.isAvailable(state));
+    }
+
+    private boolean isAutoCompleting() {
+        return autoCompleteTimeline.getStatus() == Animation.Status.RUNNING;
+    }
+
+    /**
+     * Lands every card still sliding after a drop, so the piles on screen
+     * match the state again before they are read or changed.
+     */
+    private void completeSlides() {
+        for (Card card : cards) {
+            card.completeSlide();
+        }
+    }
+
+    /**
+     * Plays the rest of the game to the foundations as one timeline: each
+     * card starts sliding a few milliseconds after the previous one. A
+     * slide animates how far along the card is and reads the pile
+     * positions every frame, so a resize mid-run still lands it on its pile.
+     */
+    public void autoComplete() {
+        if (isAutoCompleting())
+            return;
+        completeSlides();
+        int count = AutoComplete.plan(state, autoCompleteMoves);
+        if (count < 0)
+            return;
+        finishBtn.setVisible(false);
+        autoCompleteTimeline.stop();
+        autoCompleteTimeline.getKeyFrames().clear();
+
+        List<List<Card>> piles = new ArrayList<>();
+        for (int index = 0; index < GameState.PILE_COUNT; index++) {
+            piles.add(new ArrayList<>(pileAt(index).getCards()));
+        }
+        Duration start = Duration.ZERO;
+        Duration lastEnd = Duration.ZERO;
+        for (int i = 0; i < count; i++) {
+            int move = autoCompleteMoves[i];
+            Pile sourcePile = pileAt(GameState.moveFrom(move));
+            Pile destPile = pileAt(GameState.moveTo(move));
+            List<Card> source = piles.get(GameState.moveFrom(move));
+            List<Card> dest = piles.get(GameState.moveTo(move));
+            if (!GameState.isFoundation(GameState.moveTo(move))) {
+                for (int moved = 0; moved < GameState.moveCount(move); moved++) {
+                    dest.add(source.remove(source.size() - 1));
+                }
+                start = lastEnd.greaterThan(start) ? lastEnd : start;
+                autoCompleteTimeline.getKeyFrames().add(new KeyFrame(start, e -> {
+                    int applied = state.applyMove(move);
+                    moveLog.record(applied);
+                    eventLog.move(applied, state);
+                    eventStream.move(applied, state);
+                    addScore(rules.score(applied));
+                    replayOnView(move);
+                }));
+                start = start.add(AUTO_COMPLETE_STAGGER);
+                continue;
+            }
+            Card card = source.remove(source.size() - 1);
+            dest.add(card);
+            Duration end = start.add(AUTO_COMPLETE_SLIDE);
+            DoubleProperty progress = new SimpleDoubleProperty();
+            progress.addListener((observable, from, to) -> {
+                card.setTranslateX(to.doubleValue() * (destPile.getLayoutX() - card.getLayoutX()));
+                card.setTranslateY(to.doubleValue() * (destPile.getLayoutY() - card.getLayoutY()));
+            });
+            autoCompleteTimeline.getKeyFrames().addAll(
+                    new KeyFrame(start, e -> {
+                        card.toFront();
+                        applyToState(sourcePile, destPile, 1);
+                    }, new KeyValue(progress, 0)),
+                    new KeyFrame(end, e -> card.moveToPile(destPile), new KeyValue(progress, 1, Interpolator.EASE_IN)));
+            lastEnd = end;
+            start = start.add(AUTO_COMPLETE_STAGGER);
+        }
+        autoCompleteTimeline.playFromStart();
+    }
+
+    @Override
+    public void setEventLog(MoveEventLog eventLog) {
+        this.eventLog = eventLog;
+        eventLog.resume(dealNumber);
+    }
+
+    @Override
+    public void setEventStream(GameEventStream eventStream) {
+        this.eventStream = eventStream;
+        eventStream.resume(dealNumber);
+    }
+
+    @Override
+    public void setDealSource(LongSupplier dealSource) {
+        nextDeal.setDealSource(dealSource);
+    }
+
+    @Override
+    public void setWinnableOnly(boolean winnableOnly) {
+        nextDeal.setWinnableOnly(winnableOnly);
+    }
+
+    @Override
+    public void setProvenDeals(LongSupplier provenDeals) {
+        nextDeal.setProvenDeals(provenDeals);
+    }
+
+    /**
+     * Lets hints near the end of a game follow the quickest win found in
+     * {@code tablebase} instead of the move ranking.
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+        hintState = new GameState(rules);
+        hintMoves = new int[GameState.MAX_MOVES];
+    }
+
+    public MoveLog getMoveLog() {
+        return moveLog;
+    }
+
+    /**
+     * Takes back the last move. Ignored while auto-complete is playing; a
+     * card still sliding is landed first.
+     */
+    public void undo() {
+        if (isAutoCompleting() || !moveLog.canUndo())
+            return;
+        completeSlides();
+        int move = moveLog.undo();
+        state.undoMove(move);
+        eventLog.undo(move);
+        eventStream.undo(move);
+        addScore(-rules.score(move));
+        Pile sourcePile = pileAt(GameState.moveFrom(move));
+        Pile destPile = pileAt(GameState.moveTo(move));
+        int count = GameState.moveCount(move);
+        if (sourcePile == stockPile) {
+            moveTopCards(discardPile, stockPile, count, true);
+        } else if (destPile == stockPile) {
+            moveTopCards(stockPile, discardPile, count, false);
+        } else {
+            if (GameState.isFlipped(move))
+                sourcePile.getTopCard().flip();
+            moveRun(destPile, sourcePile, count);
         }
-        return false;
+        updateFinishButton();
+    }
+
+    public void redo() {
+        if (isAutoCompleting() || !moveLog.canRedo())
+            return;
+        completeSlides();
+        int move = moveLog.redo();
+        state.applyMove(move);
+        eventLog.redo(move, state);
+        eventStream.move(move, state);
+        addScore(rules.score(move));
+        replayOnView(move);
+        updateFinishButton();
+        if (isGameWon()) showModal("Congratulations!");
+    }
+
+    @Override
+    public void save(Path file) throws IOException {
+        try (GameArchive.Writer writer = GameArchive.create(file, rules)) {
+            writer.append(dealNumber, moveLog);
+        }
+    }
+
+    public static Game load(Path file, Rules rules) throws IOException {
+        try (GameArchive archive = GameArchive.open(file)) {
+            checkResumable(archive, rules);
+            Game game = new Game(archive.dealNumber(0), rules);
+            for (int i = 0; i < archive.moveCount(0); i++) {
+                int move = archive.replayMove(0, i, game.state);
+                game.moveLog.record(move);
+                game.addScore(rules.score(move));
+                game.replayOnView(move);
+            }
+            while (game.moveLog.position() > archive.undoPosition(0)) {
+                game.undo();
+            }
+            return game;
+        }
+    }
+
+    /**
+     * Fails unless {@code archive} holds a game played under {@code rules}.
+     */
+    static void checkResumable(GameArchive archive, Rules rules) throws IOException {
+        if (archive.gameCount() == 0)
+            throw new IOException("No game in the archive");
+        if (!archive.matches(rules))
+            throw new IOException("The saved game was played under other rules");
+    }
+
+    private void replayOnView(int move) {
+        Pile sourcePile = pileAt(GameState.moveFrom(move));
+        Pile destPile = pileAt(GameState.moveTo(move));
+        int count = GameState.moveCount(move);
+        if (sourcePile == stockPile) {
+            moveTopCards(stockPile, discardPile, count, false);
+        } else if (destPile == stockPile) {
+            moveTopCards(discardPile, stockPile, count, true);
+        } else {
+            moveRun(sourcePile, destPile, count);
+        }
+    }
+
+    private void moveTopCards(Pile sourcePile, Pile destPile, int count, boolean faceDown) {
+        for (int i = 0; i < count; i++) {
+            Card card = sourcePile.getTopCard();
+            card.moveToPile(destPile);
+            if (card.isFaceDown() != faceDown)
+                card.flip();
+        }
+    }
+
+    private void moveRun(Pile sourcePile, Pile destPile, int count) {
+        List<Card> cards = sourcePile.getCards();
+        List<Card> run = new ArrayList<>(cards.subList(cards.size() - count, cards.size()));
+        for (Card card : run) {
+            card.moveToPile(destPile);
+        }
+    }
+
+    private Pile pileAt(int index) {
+        if (index == GameState.STOCK)
+            return stockPile;
+        if (index == GameState.DISCARD)
+            return discardPile;
+        if (GameState.isFoundation(index))
+            return foundationPiles.get(index - GameState.FOUNDATION);
+        return tableauPiles.get(index - GameState.TABLEAU);
     }
 
     private void showModal(String msg) {
@@ -199,6 +533,9 @@ public class Game extends Pane {
     }
 
     public void refillStockFromDiscard() {
+        if (!state.canRedeal())
+            return;
+        applyToState(discardPile, stockPile, discardPile.numOfCards());
         stockPile.clear();
         Collections.reverse(discardPile.getCards());
         for (Card card : discardPile.getCards()) {
@@ -208,76 +545,61 @@ public class Game extends Pane {
             }
         }
         discardPile.clear();
-        System.out.println("Stock refilled from discard pile.");
     }
 
     public boolean isMoveValid(Card card, Pile destPile) {
-        if (destPile.getPileType().equals(Pile.PileType.TABLEAU)) {
-            if (destPile.isEmpty()) {
-                return card.getRank() == 13;
-            } else {
-                return (Card.isOppositeColor(card, destPile.getTopCard()) &&
-                        Card.isHigherRank(destPile.getTopCard(), card));
-            }
-        } else if (destPile.getPileType().equals(Pile.PileType.FOUNDATION)) {
-            if (destPile.isEmpty()) {
-                return card.getRank() == 1;
-            } else {
-                return (Card.isSameSuit(card, destPile.getTopCard()) &&
-                        Card.isHigherRank(card, destPile.getTopCard()));
-            }
-        }
-        return false;
+        int destIndex = pileIndex(destPile);
+        return destIndex >= 0 && state.canPlace(card.getCode(), destIndex);
     }
 
-    private Pile getValidIntersectingPile(Card card, List<Pile> piles) {
-        Pile result = card.getContainingPile();
-        for (Pile pile : piles) {
-            if (!pile.equals(card.getContainingPile()) &&
-                    isOverPile(card, pile) &&
-                    isMoveValid(card, pile))
-                result = pile;
+    private Pile findDropTarget(Card card, boolean includeFoundations) {
+        double x = card.getLayoutX() + card.getTranslateX() + layout.getCardWidth() / 2.0;
+        double y = card.getLayoutY() + card.getTranslateY() + layout.getCardHeight() / 2.0;
+        int best = DropZoneIndex.NONE;
+        for (int candidates = dropZones.candidates(x, y); candidates != 0;
+                candidates = DropZoneIndex.rest(candidates)) {
+            int index = DropZoneIndex.first(candidates);
+            if (isDropTarget(card, index, includeFoundations) && (best == DropZoneIndex.NONE ||
+                    dropZones.distance(index, x, y) < dropZones.distance(best, x, y)))
+                best = index;
         }
-        return result;
+        return best == DropZoneIndex.NONE ? card.getContainingPile() : pileAt(best);
+    }
+
+    private boolean isDropTarget(Card card, int index, boolean includeFoundations) {
+        if (index == DropZoneIndex.NONE || (!includeFoundations && GameState.isFoundation(index)))
+            return false;
+        Pile pile = pileAt(index);
+        return pile != card.getContainingPile() && isMoveValid(card, pile);
     }
 
-    private boolean isOverPile(Card card, Pile pile) {
-        if (pile.isEmpty())
-            return card.getBoundsInParent().intersects(pile.getBoundsInParent());
-        else
-            return card.getBoundsInParent().intersects(pile.getTopCard().getBoundsInParent());
+    private void highlightDropTarget(Pile pile) {
+        if (pile == highlightedPile)
+            return;
+        if (highlightedPile != null)
+            highlightedPile.setHighlighted(false);
+        highlightedPile = pile;
+        if (pile != null)
+            pile.setHighlighted(true);
     }
 
     private void handleValidMove(Card card, Pile destPile) {
-        String msg = null;
-        if (destPile.isEmpty()) {
-            if (destPile.getPileType().equals(Pile.PileType.FOUNDATION))
-                msg = String.format("Placed %s to the foundation.", card);
-            if (destPile.getPileType().equals(Pile.PileType.TABLEAU))
-                msg = String.format("Placed %s to a new pile.", card);
-        } else {
-            msg = String.format("Placed %s to %s.", card, destPile.getTopCard());
-        }
-        System.out.println(msg);
+        applyToState(card.getContainingPile(), destPile, draggedCards.size());
         MouseUtil.slideToDest(draggedCards, destPile);
         draggedCards.clear();
-        if (destPile.equals(Pile.PileType.FOUNDATION)) {
-            if (isGameWon()) showModal("Congratulations!");
-        }
     }
 
     private void initPiles() {
-        stockPile = new Pile(Pile.PileType.STOCK, "Stock", STOCK_GAP);
+        highlightedPile = null;
+        stockPile = new Pile(Pile.PileType.STOCK, "Stock", layout.cardGap(GameState.STOCK));
         stockPile.setBlurredBackground();
-        stockPile.setLayoutX(95);
-        stockPile.setLayoutY(20);
+        stockPile.setIndex(GameState.STOCK);
         stockPile.setOnMouseClicked(stockReverseCardsHandler);
         getChildren().add(stockPile);
 
-        discardPile = new Pile(Pile.PileType.DISCARD, "Discard", STOCK_GAP);
+        discardPile = new Pile(Pile.PileType.DISCARD, "Discard", layout.cardGap(GameState.DISCARD));
         discardPile.setBlurredBackground();
-        discardPile.setLayoutX(285);
-        discardPile.setLayoutY(20);
+        discardPile.setIndex(GameState.DISCARD);
         getChildren().add(discardPile);
 
         Button restartBtn = new Button("Restart");
@@ -290,59 +612,124 @@ public class Game extends Pane {
             }
         });
 
+        Button undoBtn = new Button("Undo");
+        undoBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        undoBtn.setLayoutY(45);
+        undoBtn.setOnAction(e -> undo());
+        undoBtn.disableProperty().bind(autoCompleteTimeline.statusProperty().isEqualTo(Animation.Status.RUNNING));
+        getChildren().add(undoBtn);
+
+        Button redoBtn = new Button("Redo");
+        redoBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        redoBtn.setLayoutY(90);
+        redoBtn.setOnAction(e -> redo());
+        redoBtn.disableProperty().bind(autoCompleteTimeline.statusProperty().isEqualTo(Animation.Status.RUNNING));
+        getChildren().add(redoBtn);
+
+        Button hintBtn = new Button("Hint");
+        hintBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        hintBtn.setLayoutY(135);
+        hintBtn.setOnAction(e -> showHint());
+        getChildren().add(hintBtn);
+
+        finishBtn = new Button("Finish");
+        finishBtn.setStyle("-fx-font: 18 arial; -fx-base: #666666;");
+        finishBtn.setLayoutY(180);
+        finishBtn.setVisible(false);
+        finishBtn.setOnAction(e -> autoComplete());
+        getChildren().add(finishBtn);
+
+        if (rules.isScored()) {
+            scoreText = new Text();
+            scoreText.setStyle("-fx-font: 18 arial;");
+            scoreText.setFill(Color.WHITE);
+            scoreText.setLayoutX(5);
+            scoreText.setLayoutY(250);
+            getChildren().add(scoreText);
+        }
+
 
         for (int i = 0; i < 4; i++) {
-            Pile foundationPile = new Pile(Pile.PileType.FOUNDATION, "Foundation " + i, FOUNDATION_GAP);
+            Pile foundationPile = new Pile(Pile.PileType.FOUNDATION, "Foundation " + i,
+                    layout.cardGap(GameState.FOUNDATION + i));
             foundationPile.setBlurredBackground();
-            foundationPile.setLayoutX(610 + i * 180);
-            foundationPile.setLayoutY(20);
+            foundationPile.setIndex(GameState.FOUNDATION + i);
             foundationPiles.add(foundationPile);
             getChildren().add(foundationPile);
         }
-        Iterator<Card> deckIterator = deck.iterator();
         for (int i = 0; i < 7; i++) {
-            Pile tableauPile = new Pile(Pile.PileType.TABLEAU, "Tableau " + i, TABLEAU_GAP);
+            Pile tableauPile = new Pile(Pile.PileType.TABLEAU, "Tableau " + i, layout.cardGap(GameState.TABLEAU + i));
             tableauPile.setBlurredBackground();
-            tableauPile.setLayoutX(95 + i * 180);
-            tableauPile.setLayoutY(275);
+            tableauPile.setIndex(GameState.TABLEAU + i);
             tableauPiles.add(tableauPile);
             getChildren().add(tableauPile);
         }
+        applyLayout();
     }
 
-    public void dealCards() {
-        int numberOfPile = 0;
-        int numberOfCard = 0;
-        int startPile = 0;
-        int countOfCardsToDeal = 27;
-        int countOfPiles = 7;
-
-        for (Card card : deck) {
-            if (numberOfCard > countOfCardsToDeal) {
-                stockPile.addCard(card);
-                addActionToCard(card);
-            } else {
-                tableauPiles.get(numberOfPile).addCard(card);
-                addActionToCard(card);
-                numberOfPile++;
-
-                if (numberOfPile == countOfPiles) {
-                    startPile++;
-                    numberOfPile = startPile;
-                }
-            }
-
-            if (numberOfPile == startPile + 1 || numberOfCard == countOfCardsToDeal)
-                card.flip();
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (getWidth() > 0 && getHeight() > 0 &&
+                (getWidth() != layout.getWidth() || getHeight() != layout.getHeight())) {
+            layout.update(getWidth(), getHeight());
+            applyLayout();
+        }
+    }
 
-            numberOfCard++;
+    /**
+     * Moves piles and cards to where {@link TableLayout} puts them for the
+     * current size, resizes the cards and rebuilds the drop zones.
+     */
+    private void applyLayout() {
+        double cardWidth = layout.getCardWidth();
+        double cardHeight = layout.getCardHeight();
+        for (Card card : cards) {
+            card.setSize(cardWidth, cardHeight);
+        }
+        dropZones = DropZoneIndex.forLayout(layout, DROP_ZONE_CELL * layout.getScale());
+        for (int index = 0; index < GameState.PILE_COUNT; index++) {
+            Pile pile = pileAt(index);
+            pile.setLayoutX(layout.pileX(index));
+            pile.setLayoutY(layout.pileY(index));
+            pile.setPrefSize(cardWidth, cardHeight);
+            pile.setCardGap(layout.cardGap(index), layout.maxSpread(index));
         }
     }
 
-    private Card addActionToCard(Card card) {
-        addMouseEventHandlers(card);
-        getChildren().add(card);
-        return card;
+    /**
+     * Lays out the current deal with the existing card nodes: every pile
+     * gets its cards in one list change and the pane's children are
+     * reordered in one change as well.
+     */
+    public void dealCards() {
+        long start = System.nanoTime();
+        state.deal(Deal.shuffle(dealNumber));
+        showDeal();
+        Metrics.DEAL.recordSince(start);
+    }
+
+    private void showDeal() {
+        moveLog.clear();
+        eventLog.deal(dealNumber);
+        eventStream.deal(dealNumber);
+        score = 0;
+        addScore(rules.getInitialScore());
+        updateFinishButton();
+
+        List<Node> children = new ArrayList<>(tableNodes);
+        for (int index = 0; index < GameState.PILE_COUNT; index++) {
+            List<Card> pileCards = new ArrayList<>(state.size(index));
+            for (int position = 0; position < state.size(index); position++) {
+                byte code = state.card(index, position);
+                Card card = cards[CardCode.index(code)];
+                card.reset(CardCode.isFaceDown(code));
+                pileCards.add(card);
+            }
+            pileAt(index).setCards(pileCards);
+            children.addAll(pileCards);
+        }
+        getChildren().setAll(children);
     }
 
     public void setTableBackground(Image tableBackground) {
@@ -351,30 +738,46 @@ public class Game extends Pane {
                 BackgroundPosition.CENTER, BackgroundSize.DEFAULT)));
     }
 
-    private void restart() {
-        clearPane();
-        deck = Card.createNewDeck();
-        initPiles();
-        dealCards();
+    /**
+     * Swaps in the deal {@link DealPreparer} got ready in the background,
+     * so only the layout happens on the FX thread.
+     */
+    public void restart() {
+        long start = System.nanoTime();
+        autoCompleteTimeline.stop();
+        highlightDropTarget(null);
+        draggedCards.clear();
+        DealPreparer.Prepared prepared = nextDeal.take();
+        dealNumber = prepared.getDealNumber();
+        state.copyFrom(prepared.getState());
+        showDeal();
+        Metrics.DEAL.recordSince(start);
     }
 
-    private void clearPane() {
-        stockPile.clear();
-        discardPile.clear();
-        foundationPiles.clear();
-        tableauPiles.clear();
-        this.getChildren().clear();
+    private Pile possibleMove(Card card) {
+        int move = moveIndex.moveForTopCard(pileIndex(card.getContainingPile()));
+        return move == MoveIndex.NO_MOVE ? null : pileAt(GameState.moveTo(move));
     }
 
-    private Pile possibleMove(Card card) {
-        for (Pile pile: foundationPiles)
-            if(isMoveValid(card, pile)) {
-                return pile;
-            }
-        for (Pile pile: tableauPiles)
-            if(isMoveValid(card, pile)) {
-                return pile;
-            }
-        return null;
+    public void showHint() {
+        int move = MoveIndex.NO_MOVE;
+        if (tablebase != null && tablebase.isEndgame(state))
+            move = tablebase.bestMove(state, hintState, hintMoves);
+        if (move == MoveIndex.NO_MOVE)
+            move = moveIndex.bestMove();
+        if (move == MoveIndex.NO_MOVE)
+            return;
+        List<Card> cards = pileAt(GameState.moveFrom(move)).getCards();
+        int count = GameState.moveFrom(move) == GameState.STOCK ? 1 : GameState.moveCount(move);
+        for (Card card : cards.subList(cards.size() - count, cards.size())) {
+            card.getDropShadow().setColor(Color.GOLD);
+            card.getDropShadow().setRadius(20 * layout.getScale());
+            PauseTransition pause = new PauseTransition(HINT_DURATION);
+            pause.setOnFinished(e -> {
+                card.getDropShadow().setColor(Color.gray(0, 0.75));
+                card.getDropShadow().setRadius(2);
+            });
+            pause.play();
+        }
     }
 }
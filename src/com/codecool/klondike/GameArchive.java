@@ -0,0 +1,216 @@
+package com.codecool.klondike;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary file of finished or in-progress games, read through a memory
+ * mapping so any game or move can be reached without parsing the ones
+ * before it.
+ *
+ * <pre>
+ * header  : int magic, int version, int drawCount, int redealLimit, int scoring
+ * game    : long dealNumber, int moveCount, int undoPosition, short[moveCount] moves
+ * index   : long[gameCount] game offsets
+ * trailer : long indexOffset, int gameCount, int magic
+ * </pre>
+ *
+ * A move is packed into 14 bits: source pile, destination pile, card count
+ * and the flip flag. Archives are limited to 2 GB each. The file layout is
+ * checked when it is opened and every replayed move is checked against
+ * the position, so a damaged file fails with an {@link IOException}.
+ */
+public class GameArchive implements Closeable {
+
+    private static final int MAGIC = 0x4b4c4152;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int TRAILER_SIZE = 16;
+    private static final int GAME_HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexOffset;
+    private final int gameCount;
+
+    private GameArchive(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        int size = buffer.limit();
+        if (size < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC ||
+                buffer.getInt(size - 4) != MAGIC)
+            throw new IOException("Not a game archive");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported game archive version " + buffer.getInt(4));
+        long index = buffer.getLong(size - TRAILER_SIZE);
+        gameCount = buffer.getInt(size - 8);
+        if (gameCount < 0 || index < HEADER_SIZE || index + gameCount * 8L != size - TRAILER_SIZE)
+            throw new IOException("Corrupt game archive index");
+        indexOffset = (int) index;
+        int scoring = buffer.getInt(16);
+        if (scoring < 0 || scoring >= KlondikeRules.Scoring.values().length)
+            throw new IOException("Unknown scoring " + scoring + " in game archive");
+        for (int game = 0; game < gameCount; game++) {
+            long offset = buffer.getLong(indexOffset + game * 8);
+            if (offset < HEADER_SIZE || offset + GAME_HEADER_SIZE > indexOffset)
+                throw new IOException("Corrupt offset for game " + game);
+            int moveCount = buffer.getInt((int) offset + 8);
+            int undoPosition = buffer.getInt((int) offset + 12);
+            if (moveCount < 0 || offset + GAME_HEADER_SIZE + moveCount * 2L > indexOffset ||
+                    undoPosition < 0 || undoPosition > moveCount)
+                throw new IOException("Corrupt moves for game " + game);
+        }
+    }
+
+    public static GameArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new GameArchive(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static Writer create(Path file, Rules rules) throws IOException {
+        return new Writer(file, rules);
+    }
+
+    public static short pack(int move) {
+        return (short) (GameState.moveFrom(move) |
+                GameState.moveTo(move) << 4 |
+                GameState.moveCount(move) << 8 |
+                (GameState.isFlipped(move) ? 1 << 13 : 0));
+    }
+
+    public static int unpack(short packed) {
+        int move = GameState.move(packed & 0xF, (packed >> 4) & 0xF, (packed >> 8) & 0x1F);
+        return (packed & 1 << 13) != 0 ? move | GameState.FLIPPED : move;
+    }
+
+    /**
+     * The rules the games were played under.
+     */
+    public Rules getRules() {
+        return new KlondikeRules(buffer.getInt(8), buffer.getInt(12),
+                KlondikeRules.Scoring.values()[buffer.getInt(16)]);
+    }
+
+    public boolean matches(Rules rules) {
+        return buffer.getInt(8) == rules.getDrawCount() && buffer.getInt(12) == rules.getRedealLimit() &&
+                buffer.getInt(16) == rules.getScoring().ordinal();
+    }
+
+    public int gameCount() {
+        return gameCount;
+    }
+
+    public long dealNumber(int game) {
+        return buffer.getLong(offset(game));
+    }
+
+    public int moveCount(int game) {
+        return buffer.getInt(offset(game) + 8);
+    }
+
+    public int undoPosition(int game) {
+        return buffer.getInt(offset(game) + 12);
+    }
+
+    public int move(int game, int index) {
+        return unpack(buffer.getShort(offset(game) + GAME_HEADER_SIZE + index * 2));
+    }
+
+    /**
+     * Deals {@code game} into {@code state} and applies its first
+     * {@code moves} moves.
+     */
+    public void replay(int game, int moves, GameState state) throws IOException {
+        state.deal(Deal.shuffle(dealNumber(game)));
+        for (int i = 0; i < moves; i++) {
+            replayMove(game, i, state);
+        }
+    }
+
+    /**
+     * Applies move {@code index} of {@code game} to {@code state}, which
+     * must hold the position before it, and returns the move as applied.
+     * Fails if the move is not legal there or its flip flag does not match.
+     */
+    public int replayMove(int game, int index, GameState state) throws IOException {
+        int move = move(game, index);
+        if (!state.isLegal(move & ~GameState.FLIPPED))
+            throw new IOException("Illegal move " + index + " in game " + game + " of the archive");
+        int applied = state.applyMove(move);
+        if (applied != move)
+            throw new IOException("Move " + index + " in game " + game + " does not match the position");
+        return applied;
+    }
+
+    private int offset(int game) {
+        if (game < 0 || game >= gameCount)
+            throw new IndexOutOfBoundsException("Game " + game + " of " + gameCount);
+        return (int) buffer.getLong(indexOffset + game * 8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private long[] offsets = new long[64];
+        private int gameCount;
+        private long position;
+
+        private Writer(Path file, Rules rules) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rules.getDrawCount());
+            out.writeInt(rules.getRedealLimit());
+            out.writeInt(rules.getScoring().ordinal());
+            position = HEADER_SIZE;
+        }
+
+        public void append(long dealNumber, MoveLog log) throws IOException {
+            long size = GAME_HEADER_SIZE + log.size() * 2L;
+            if (position + size + (gameCount + 1) * 8L + TRAILER_SIZE > Integer.MAX_VALUE)
+                throw new IOException("Game archive is full");
+            if (gameCount == offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[gameCount++] = position;
+            out.writeLong(dealNumber);
+            out.writeInt(log.size());
+            out.writeInt(log.position());
+            for (int i = 0; i < log.size(); i++) {
+                out.writeShort(pack(log.get(i)));
+            }
+            position += size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (int i = 0; i < gameCount; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(position);
+            out.writeInt(gameCount);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.codecool.klondike;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stream of deal, resume, move, flip, recycle, undo and win events for
+ * spectators, recorders and stats. The game thread only writes two longs
+ * into an {@link EventRing}, as {@link MoveEventLog} does; its daemon
+ * thread collects them into {@link Batch}es and offers those to a
+ * {@link SubmissionPublisher}, which delivers to every subscriber on its
+ * own executor with per-subscriber backpressure. A full ring, or a
+ * subscriber that has fallen a whole buffer behind, drops events and
+ * counts them instead of stalling the game.
+ */
+public class GameEventStream implements Flow.Publisher<GameEventStream.Batch>, AutoCloseable {
+
+    public static final GameEventStream DISABLED = new GameEventStream(false);
+
+    public static final int DEAL = 0;
+    public static final int MOVE = 1;
+    public static final int FLIP = 2;
+    public static final int RECYCLE = 3;
+    public static final int UNDO = 4;
+    public static final int WIN = 5;
+    public static final int RESUME = 6;
+    public static final int NO_CARD = -1;
+
+    private static final int CAPACITY = 1 << 12;
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final SubmissionPublisher<Batch> publisher = new SubmissionPublisher<>();
+    private final EventRing ring;
+    private volatile long droppedBatches;
+
+    /**
+     * Events published together: {@link #time(int)} is the wall-clock time
+     * the game recorded the event and {@link #event(int)} the packed event,
+     * read with the static accessors of {@link GameEventStream}.
+     */
+    public static final class Batch {
+
+        private final long[] records;
+        private final int size;
+
+        private Batch(long[] records, int size) {
+            this.records = records;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long time(int i) {
+            return records[i * 2];
+        }
+
+        public long event(int i) {
+            return records[i * 2 + 1];
+        }
+    }
+
+    private GameEventStream(boolean enabled) {
+        if (!enabled) {
+            ring = null;
+            publisher.close();
+            return;
+        }
+        ring = new EventRing("game-event-stream", CAPACITY, MAX_BATCH, IDLE_PARK_NANOS, new PublishingSink());
+    }
+
+    public static GameEventStream create() {
+        return new GameEventStream(true);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Batch> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    public static int type(long event) {
+        return (int) (event >>> 56);
+    }
+
+    public static int move(long event) {
+        return (int) event;
+    }
+
+    /**
+     * The card the event is about as a {@link CardCode} index, or
+     * {@link #NO_CARD}.
+     */
+    public static int card(long event) {
+        return (int) ((event >>> 32) & 0xFFFFFF) - 1;
+    }
+
+    public static long dealNumber(long event) {
+        return event & 0xFFFFFFFFFFFFFFL;
+    }
+
+    public void deal(long dealNumber) {
+        append((long) DEAL << 56 | dealNumber & 0xFFFFFFFFFFFFFFL);
+    }
+
+    /**
+     * Reports a game already on the table when the stream is attached:
+     * dealt before it, or loaded from a save with moves already played.
+     */
+    public void resume(long dealNumber) {
+        append((long) RESUME << 56 | dealNumber & 0xFFFFFFFFFFFFFFL);
+    }
+
+    /**
+     * Reports a move right after it was applied to {@code state}: a move,
+     * or a recycle when the waste went back to the stock, then the card it
+     * turned over and the win if it finished the game.
+     */
+    public void move(int move, GameState state) {
+        if (ring == null)
+            return;
+        int from = GameState.moveFrom(move);
+        int to = GameState.moveTo(move);
+        if (to == GameState.STOCK) {
+            append(RECYCLE, move, NO_CARD);
+            return;
+        }
+        append(MOVE, move, CardCode.index(state.card(to, state.size(to) - GameState.moveCount(move))));
+        if (GameState.isFlipped(move))
+            append(FLIP, move, CardCode.index(state.top(from)));
+        if (state.isWon())
+            append(WIN, move, NO_CARD);
+    }
+
+    public void undo(int move) {
+        append(UNDO, move, NO_CARD);
+    }
+
+    /**
+     * Events lost because the ring was full.
+     */
+    public long getDroppedEventCount() {
+        return ring == null ? 0 : ring.getDroppedCount();
+    }
+
+    /**
+     * Batches not delivered to a subscriber because its buffer was full,
+     * counted once per subscriber.
+     */
+    public long getDroppedBatchCount() {
+        return droppedBatches;
+    }
+
+    private void append(int type, int move, int card) {
+        append((long) type << 56 | (card + 1L) << 32 | (move & 0xFFFFFFFFL));
+    }
+
+    private void append(long event) {
+        if (ring != null)
+            ring.append(event);
+    }
+
+    /**
+     * Copies drained events into a {@link Batch} and offers it to the
+     * subscribers, if there are any.
+     */
+    private class PublishingSink implements EventRing.Sink {
+
+        @Override
+        public boolean drain(EventRing ring, long from, long end) {
+            if (!publisher.hasSubscribers())
+                return true;
+            int size = (int) (end - from);
+            long[] records = new long[size * 2];
+            for (int i = 0; i < size; i++) {
+                records[i * 2] = ring.time(from + i);
+                records[i * 2 + 1] = ring.payload(from + i);
+            }
+            publisher.offer(new Batch(records, size), (subscriber, batch) -> {
+                droppedBatches++;
+                return false;
+            });
+            return true;
+        }
+
+        @Override
+        public void closed() {
+            publisher.close();
+        }
+    }
+
+    /**
+     * Publishes what is still queued, completes the subscribers and stops
+     * the background thread.
+     */
+    @Override
+    public void close() {
+        if (ring != null)
+            ring.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.codecool.klondike;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many independent {@link GameSession}s in one JVM. Sessions share a
+ * FIFO work-stealing pool; each one only occupies a worker while its
+ * mailbox is being drained.
+ */
+public class GameServer implements AutoCloseable {
+
+    private final ForkJoinPool workers;
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Rules rules;
+
+    public GameServer(int parallelism) {
+        this(parallelism, Rules.DEFAULT);
+    }
+
+    /**
+     * Sessions opened without their own rules play by {@code rules}.
+     */
+    public GameServer(int parallelism, Rules rules) {
+        this.rules = rules;
+        workers = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    public GameSession open(long dealNumber) {
+        return open(dealNumber, rules);
+    }
+
+    public GameSession open(long dealNumber, Rules rules) {
+        GameSession session = new GameSession(nextId.getAndIncrement(), workers, rules);
+        sessions.put(session.getId(), session);
+        session.deal(dealNumber);
+        return session;
+    }
+
+    public GameSession get(long id) {
+        return sessions.get(id);
+    }
+
+    public void close(long id) {
+        sessions.remove(id);
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+        workers.shutdown();
+    }
+}
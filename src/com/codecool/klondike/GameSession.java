@@ -0,0 +1,135 @@
+package com.codecool.klondike;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One headless game hosted by a {@link GameServer}. Commands go into a
+ * mailbox and are run one at a time by whichever worker drains it, so the
+ * game state itself is never locked or touched by two threads at once.
+ */
+public class GameSession {
+
+    public static final int ILLEGAL_MOVE = -1;
+
+    private static final int DEAL = 0;
+    private static final int MOVE = 1;
+    private static final int UNDO = 2;
+    private static final int SNAPSHOT = 3;
+    private static final int MAX_BATCH = 64;
+
+    private final long id;
+    private final Executor executor;
+    private final GameState state;
+    private final MoveLog moveLog = new MoveLog();
+    private final Queue<Command> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private long dealNumber;
+
+    GameSession(long id, Executor executor, Rules rules) {
+        this.id = id;
+        this.executor = executor;
+        state = new GameState(rules);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public CompletableFuture<Integer> deal(long dealNumber) {
+        return submit(DEAL, dealNumber);
+    }
+
+    /**
+     * Plays a packed {@link GameState} move. Completes with the applied move
+     * (including its flip flag) or {@link #ILLEGAL_MOVE}.
+     */
+    public CompletableFuture<Integer> move(int move) {
+        return submit(MOVE, move);
+    }
+
+    /**
+     * Completes with the move that was taken back or {@link #ILLEGAL_MOVE}.
+     */
+    public CompletableFuture<Integer> undo() {
+        return submit(UNDO, 0);
+    }
+
+    /**
+     * Copies the current position into {@code target} and completes with 1
+     * if the game is won, 0 otherwise.
+     */
+    public CompletableFuture<Integer> snapshot(GameState target) {
+        Command command = new Command(SNAPSHOT, 0, target);
+        enqueue(command);
+        return command.reply;
+    }
+
+    private CompletableFuture<Integer> submit(int type, long argument) {
+        Command command = new Command(type, argument, null);
+        enqueue(command);
+        return command.reply;
+    }
+
+    private void enqueue(Command command) {
+        mailbox.add(command);
+        if (scheduled.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    private void drain() {
+        for (int processed = 0; processed < MAX_BATCH; processed++) {
+            Command command = mailbox.poll();
+            if (command == null)
+                break;
+            command.reply.complete(run(command));
+        }
+        scheduled.set(false);
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    private int run(Command command) {
+        switch (command.type) {
+            case DEAL:
+                dealNumber = command.argument;
+                state.deal(Deal.shuffle(dealNumber));
+                moveLog.clear();
+                return 0;
+            case MOVE:
+                int move = (int) command.argument;
+                if (!state.isLegal(move))
+                    return ILLEGAL_MOVE;
+                int applied = state.applyMove(move);
+                moveLog.record(applied);
+                return applied;
+            case UNDO:
+                if (!moveLog.canUndo())
+                    return ILLEGAL_MOVE;
+                int undone = moveLog.undo();
+                state.undoMove(undone);
+                return undone;
+            case SNAPSHOT:
+                command.target.copyFrom(state);
+                return state.isWon() ? 1 : 0;
+            default:
+                throw new IllegalStateException("Unknown command " + command.type);
+        }
+    }
+
+    private static final class Command {
+        final int type;
+        final long argument;
+        final GameState target;
+        final CompletableFuture<Integer> reply = new CompletableFuture<>();
+
+        Command(int type, long argument, GameState target) {
+            this.type = type;
+            this.argument = argument;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.codecool.klondike;
+
+import java.util.Arrays;
+
+/**
+ * Headless Klondike position. Piles are fixed-size byte arrays of
+ * {@link CardCode}s and moves are packed ints, so generating and applying
+ * moves never allocates. A canonical {@link Zobrist} hash is kept up to
+ * date card by card as moves are applied and undone.
+ */
+public class GameState {
+
+    public static final int STOCK = 0;
+    public static final int DISCARD = 1;
+    public static final int FOUNDATION = 2;
+    public static final int TABLEAU = 6;
+    public static final int FOUNDATION_COUNT = 4;
+    public static final int TABLEAU_COUNT = 7;
+    public static final int PILE_COUNT = 13;
+    public static final int MAX_MOVES = 256;
+
+    public static final int FLIPPED = 1 << 16;
+
+    private static final int PILE_CAPACITY = CardCode.CARD_COUNT;
+    private static final int CARDS_TO_DEAL = 28;
+
+    private final byte[] cards = new byte[PILE_COUNT * PILE_CAPACITY];
+    private final int[] sizes = new int[PILE_COUNT];
+    private final long[] pileHashes = new long[Zobrist.SYMMETRY_COUNT];
+    private final long[] columnHashes = new long[Zobrist.SYMMETRY_COUNT * TABLEAU_COUNT];
+    private Rules rules;
+    private int redeals;
+    private PileListener pileListener;
+
+    public GameState() {
+        this(Rules.DEFAULT);
+    }
+
+    public GameState(Rules rules) {
+        this.rules = rules;
+    }
+
+    public interface PileListener {
+        void pileChanged(int pile);
+    }
+
+    public static int move(int from, int to, int count) {
+        return from | to << 4 | count << 8;
+    }
+
+    public static int moveFrom(int move) {
+        return move & 0xF;
+    }
+
+    public static int moveTo(int move) {
+        return (move >> 4) & 0xF;
+    }
+
+    public static int moveCount(int move) {
+        return (move >> 8) & 0xFF;
+    }
+
+    public static boolean isFlipped(int move) {
+        return (move & FLIPPED) != 0;
+    }
+
+    public static boolean isFoundation(int pile) {
+        return pile >= FOUNDATION && pile < TABLEAU;
+    }
+
+    public static boolean isTableau(int pile) {
+        return pile >= TABLEAU && pile < PILE_COUNT;
+    }
+
+    public void setPileListener(PileListener pileListener) {
+        this.pileListener = pileListener;
+    }
+
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * How many times the waste has been turned back into the stock.
+     */
+    public int getRedeals() {
+        return redeals;
+    }
+
+    public void deal(byte[] deck) {
+        clear();
+        int numberOfPile = 0;
+        int startPile = 0;
+        for (int i = 0; i < deck.length; i++) {
+            byte card = CardCode.faceDown(deck[i]);
+            if (i >= CARDS_TO_DEAL) {
+                push(STOCK, card);
+                continue;
+            }
+            int pile = TABLEAU + numberOfPile;
+            push(pile, numberOfPile == startPile ? CardCode.faceUp(card) : card);
+            numberOfPile++;
+            if (numberOfPile == TABLEAU_COUNT) {
+                startPile++;
+                numberOfPile = startPile;
+            }
+        }
+        allPilesChanged();
+    }
+
+    public void copyFrom(GameState other) {
+        System.arraycopy(other.cards, 0, cards, 0, cards.length);
+        System.arraycopy(other.sizes, 0, sizes, 0, sizes.length);
+        System.arraycopy(other.pileHashes, 0, pileHashes, 0, pileHashes.length);
+        System.arraycopy(other.columnHashes, 0, columnHashes, 0, columnHashes.length);
+        rules = other.rules;
+        redeals = other.redeals;
+        allPilesChanged();
+    }
+
+    public void clear() {
+        for (int pile = 0; pile < PILE_COUNT; pile++) {
+            sizes[pile] = 0;
+        }
+        Arrays.fill(pileHashes, 0);
+        Arrays.fill(columnHashes, 0);
+        redeals = 0;
+    }
+
+    /**
+     * The canonical hash of this position, equal to
+     * {@link Zobrist#hash(GameState)} but without rescanning the piles.
+     */
+    public long hash() {
+        return Zobrist.combine(pileHashes, columnHashes) ^ Zobrist.redealKey(rules, redeals);
+    }
+
+    public int size(int pile) {
+        return sizes[pile];
+    }
+
+    public boolean isEmpty(int pile) {
+        return sizes[pile] == 0;
+    }
+
+    public byte card(int pile, int position) {
+        return cards[pile * PILE_CAPACITY + position];
+    }
+
+    public byte top(int pile) {
+        return cards[pile * PILE_CAPACITY + sizes[pile] - 1];
+    }
+
+    public int firstFaceUp(int pile) {
+        int position = sizes[pile];
+        while (position > 0 && !CardCode.isFaceDown(card(pile, position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    public int foundationCardCount() {
+        int count = 0;
+        for (int pile = FOUNDATION; pile < TABLEAU; pile++) {
+            count += sizes[pile];
+        }
+        return count;
+    }
+
+    public int faceDownCount() {
+        int count = 0;
+        for (int pile = TABLEAU; pile < PILE_COUNT; pile++) {
+            count += firstFaceUp(pile);
+        }
+        return count;
+    }
+
+    public boolean isWon() {
+        return foundationCardCount() == CardCode.CARD_COUNT;
+    }
+
+    public boolean canPlace(byte card, int destPile) {
+        if (isTableau(destPile)) {
+            if (sizes[destPile] == 0) {
+                return rules.canStartTableau(card);
+            }
+            byte top = top(destPile);
+            return !CardCode.isFaceDown(top) && rules.canStack(card, top);
+        } else if (isFoundation(destPile)) {
+            if (sizes[destPile] == 0) {
+                return rules.canStartFoundation(card);
+            }
+            return rules.canFound(card, top(destPile));
+        }
+        return false;
+    }
+
+    public boolean canRedeal() {
+        return sizes[STOCK] == 0 && sizes[DISCARD] > 0 &&
+                (rules.getRedealLimit() == Rules.UNLIMITED_REDEALS || redeals < rules.getRedealLimit());
+    }
+
+    /**
+     * The draw allowed by the rules right now, or 0 if the stock is empty.
+     */
+    public int drawMove() {
+        return sizes[STOCK] == 0 ? 0 : move(STOCK, DISCARD, Math.min(rules.getDrawCount(), sizes[STOCK]));
+    }
+
+    /**
+     * The move turning the waste back into the stock, or 0 if that is not
+     * allowed right now.
+     */
+    public int redealMove() {
+        return canRedeal() ? move(DISCARD, STOCK, sizes[DISCARD]) : 0;
+    }
+
+    /**
+     * Checks a move coming from outside the engine without generating the
+     * whole move list.
+     */
+    public boolean isLegal(int move) {
+        int from = moveFrom(move);
+        int to = moveTo(move);
+        int count = moveCount(move);
+        if (from >= PILE_COUNT || to >= PILE_COUNT || from == to || count == 0 || count > sizes[from])
+            return false;
+        if (from == STOCK || to == STOCK)
+            return move == drawMove() || move == redealMove();
+        if (isTableau(from)) {
+            if (count > sizes[from] - firstFaceUp(from) || (isFoundation(to) && count > 1))
+                return false;
+        } else if (count > 1 || from != DISCARD && !isTableau(to)) {
+            return false;
+        }
+        return canPlace(card(from, sizes[from] - count), to);
+    }
+
+    /**
+     * Writes every legal move into {@code out} and returns how many there
+     * are. Foundation moves come first.
+     */
+    public int generateMoves(int[] out) {
+        return generateMoves(out, 0);
+    }
+
+    /**
+     * Same as {@link #generateMoves(int[])} but writes from {@code offset}
+     * and returns the end offset, so callers can keep one move stack.
+     */
+    public int generateMoves(int[] out, int offset) {
+        int count = offset;
+        if (sizes[DISCARD] > 0) {
+            count = addMovesOf(DISCARD, top(DISCARD), 1, out, count);
+        }
+        for (int pile = TABLEAU; pile < PILE_COUNT; pile++) {
+            int size = sizes[pile];
+            for (int position = firstFaceUp(pile); position < size; position++) {
+                count = addMovesOf(pile, card(pile, position), size - position, out, count);
+            }
+        }
+        for (int pile = FOUNDATION; pile < TABLEAU; pile++) {
+            if (sizes[pile] > 0) {
+                count = addTableauMoves(pile, top(pile), 1, out, count);
+            }
+        }
+        if (sizes[STOCK] > 0) {
+            out[count++] = drawMove();
+        } else if (canRedeal()) {
+            out[count++] = redealMove();
+        }
+        return count;
+    }
+
+    private int addMovesOf(int from, byte card, int runLength, int[] out, int count) {
+        if (runLength == 1) {
+            for (int dest = FOUNDATION; dest < TABLEAU; dest++) {
+                if (canPlace(card, dest)) {
+                    out[count++] = move(from, dest, 1);
+                }
+            }
+        }
+        return addTableauMoves(from, card, runLength, out, count);
+    }
+
+    private int addTableauMoves(int from, byte card, int runLength, int[] out, int count) {
+        for (int dest = TABLEAU; dest < PILE_COUNT; dest++) {
+            if (dest != from && canPlace(card, dest)) {
+                out[count++] = move(from, dest, runLength);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies a move produced by {@link #generateMoves} and returns it with
+     * {@link #FLIPPED} set when a face-down tableau card was turned over.
+     */
+    public int applyMove(int move) {
+        int from = moveFrom(move);
+        int to = moveTo(move);
+        int count = moveCount(move);
+        int applied = move & ~FLIPPED;
+        if (from == STOCK) {
+            for (int i = 0; i < count; i++) {
+                push(DISCARD, CardCode.faceUp(pop(STOCK)));
+            }
+        } else if (from == DISCARD && to == STOCK) {
+            for (int i = 0; i < count; i++) {
+                push(STOCK, CardCode.faceDown(pop(DISCARD)));
+            }
+            redeals++;
+        } else {
+            transfer(from, to, count);
+            if (isTableau(from) && sizes[from] > 0 && CardCode.isFaceDown(top(from))) {
+                setTop(from, CardCode.faceUp(top(from)));
+                applied |= FLIPPED;
+            }
+        }
+        if (pileListener != null) {
+            pileListener.pileChanged(from);
+            pileListener.pileChanged(to);
+        }
+        return applied;
+    }
+
+    public void undoMove(int move) {
+        undo(move);
+        if (pileListener != null) {
+            pileListener.pileChanged(moveFrom(move));
+            pileListener.pileChanged(moveTo(move));
+        }
+    }
+
+    private void undo(int move) {
+        int from = moveFrom(move);
+        int to = moveTo(move);
+        int count = moveCount(move);
+        if (from == STOCK) {
+            for (int i = 0; i < count; i++) {
+                push(STOCK, CardCode.faceDown(pop(DISCARD)));
+            }
+            return;
+        }
+        if (from == DISCARD && to == STOCK) {
+            for (int i = 0; i < count; i++) {
+                push(DISCARD, CardCode.faceUp(pop(STOCK)));
+            }
+            redeals--;
+            return;
+        }
+        if (isFlipped(move)) {
+            setTop(from, CardCode.faceDown(top(from)));
+        }
+        transfer(to, from, count);
+    }
+
+    private void allPilesChanged() {
+        if (pileListener != null) {
+            for (int pile = 0; pile < PILE_COUNT; pile++) {
+                pileListener.pileChanged(pile);
+            }
+        }
+    }
+
+    private void transfer(int from, int to, int count) {
+        int start = sizes[from] - count;
+        for (int i = 0; i < count; i++) {
+            byte card = cards[from * PILE_CAPACITY + start + i];
+            toggleKey(from, start + i, card);
+            toggleKey(to, sizes[to] + i, card);
+        }
+        System.arraycopy(cards, from * PILE_CAPACITY + start, cards, to * PILE_CAPACITY + sizes[to], count);
+        sizes[from] = start;
+        sizes[to] += count;
+    }
+
+    private void push(int pile, byte card) {
+        toggleKey(pile, sizes[pile], card);
+        cards[pile * PILE_CAPACITY + sizes[pile]++] = card;
+    }
+
+    private byte pop(int pile) {
+        byte card = cards[pile * PILE_CAPACITY + --sizes[pile]];
+        toggleKey(pile, sizes[pile], card);
+        return card;
+    }
+
+    private void setTop(int pile, byte card) {
+        toggleKey(pile, sizes[pile] - 1, top(pile));
+        toggleKey(pile, sizes[pile] - 1, card);
+        cards[pile * PILE_CAPACITY + sizes[pile] - 1] = card;
+    }
+
+    private void toggleKey(int pile, int position, byte card) {
+        if (isTableau(pile)) {
+            int column = pile - TABLEAU;
+            for (int symmetry = 0; symmetry < Zobrist.SYMMETRY_COUNT; symmetry++) {
+                columnHashes[symmetry * TABLEAU_COUNT + column] ^= Zobrist.key(symmetry, pile, position, card);
+            }
+        } else {
+            for (int symmetry = 0; symmetry < Zobrist.SYMMETRY_COUNT; symmetry++) {
+                pileHashes[symmetry] ^= Zobrist.key(symmetry, pile, position, card);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.codecool.klondike;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.LongSupplier;
+
+/**
+ * What the application needs from a table view, whichever renderer draws it.
+ */
+public interface GameView {
+
+    boolean isGameWon();
+
+    /**
+     * Starts reporting deals and moves to {@code eventLog}.
+     */
+    void setEventLog(MoveEventLog eventLog);
+
+    /**
+     * Starts publishing deals and moves to the subscribers of {@code eventStream},
+     * beginning with a resume of the game already on the table.
+     */
+    void setEventStream(GameEventStream eventStream);
+
+    /**
+     * Where Restart takes the next deal number from.
+     */
+    void setDealSource(LongSupplier dealSource);
+
+    /**
+     * Makes Restart only deal games the solver proved winnable.
+     */
+    void setWinnableOnly(boolean winnableOnly);
+
+    /**
+     * Deals known to be winnable that Restart may use in winnable-only mode
+     * instead of waiting for the solver.
+     */
+    void setProvenDeals(LongSupplier provenDeals);
+
+    void save(Path file) throws IOException;
+}
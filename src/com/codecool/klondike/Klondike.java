@@ -1,28 +1,227 @@
 package com.codecool.klondike;
 
 import javafx.application.Application;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Text;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
 public class Klondike extends Application {
 
-    private static final double WINDOW_WIDTH = 1400;
-    private static final double WINDOW_HEIGHT = 900;
+    private static final double MIN_WINDOW_WIDTH = 640;
+    private static final double MIN_WINDOW_HEIGHT = 420;
+    private static final double SCREEN_FILL = 0.9;
+    private static final String USAGE =
+            "com.codecool.klondike.Klondike [--deal=<number>] [--renderer=canvas] [--winnable=true] " +
+                    "[--difficulty=easy|medium|hard] [--draw=1|2|3] [--redeals=<n>|unlimited] [--scoring=none|standard|vegas]";
+
+    private GameView view;
+    private MoveEventLog eventLog = MoveEventLog.DISABLED;
+    private final GameEventStream eventStream = GameEventStream.create();
+    private DealLibrary dealLibrary;
+    private EndgameTablebase tablebase;
+    private LongSupplier dealSource = Deal::randomDealNumber;
+
+    private interface ViewLoader<T extends GameView> {
+        T load(Path file) throws IOException;
+    }
 
     public static void main(String[] args) {
         launch(args);
     }
 
     @Override
-    public void start(Stage primaryStage) {
+    public void init() {
         Card.loadCardImages();
-        Game game = new Game();
-        game.setTableBackground(new Image("/table/green.png"));
+    }
+
+    @Override
+    public void start(Stage primaryStage) {
+        Image tableBackground = new Image("/table/green.png");
+        Parent root;
+        Map<String, String> options = getParameters().getNamed();
+        Rules rules;
+        DealLibrary.Difficulty difficulty = null;
+        Long deal = null;
+        try {
+            rules = Rules.fromOptions(options);
+            if (options.containsKey("difficulty"))
+                difficulty = DealLibrary.Difficulty.valueOf(options.get("difficulty").toUpperCase());
+            if (options.containsKey("deal"))
+                deal = Long.parseLong(options.get("deal"));
+        } catch (IllegalArgumentException e) {
+            CommandLine.fail("Bad option: " + e.getMessage(), USAGE);
+            return;
+        }
+        if (difficulty != null)
+            useDealLibrary(difficulty, rules);
+        if ("canvas".equals(options.get("renderer"))) {
+            CanvasTable table = createView(deal, number -> new CanvasTable(number, rules),
+                    file -> CanvasTable.load(file, rules));
+            table.setTableBackground(tableBackground);
+            view = table;
+            root = table;
+        } else {
+            Game game = createView(deal, number -> new Game(number, rules), file -> Game.load(file, rules));
+            game.setTableBackground(tableBackground);
+            tablebase = openTablebase(rules);
+            if (tablebase != null)
+                game.setTablebase(tablebase);
+            view = game;
+            root = game;
+        }
+
+        try {
+            eventLog = MoveEventLog.open(getDataDirectory().resolve("moves.log"));
+        } catch (IOException e) {
+            System.err.println("Move log disabled: " + e.getMessage());
+        }
+        view.setEventLog(eventLog);
+        view.setEventStream(eventStream);
+        view.setDealSource(dealSource);
+        boolean winnableOnly = Boolean.parseBoolean(options.get("winnable"));
+        view.setWinnableOnly(winnableOnly);
+        if (winnableOnly) {
+            DealLibrary library = openDealLibrary(rules);
+            if (library != null && library.count() > 0)
+                view.setProvenDeals(library::pick);
+        }
+
+        Text metricsOverlay = Metrics.createOverlay();
+        StackPane.setAlignment(metricsOverlay, Pos.TOP_RIGHT);
+        StackPane.setMargin(metricsOverlay, new Insets(10));
+        Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+        Scene scene = new Scene(new StackPane(root, metricsOverlay),
+                Math.min(TableLayout.DESIGN_WIDTH, screen.getWidth() * SCREEN_FILL),
+                Math.min(TableLayout.DESIGN_HEIGHT, screen.getHeight() * SCREEN_FILL));
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.F3)
+                metricsOverlay.setVisible(!metricsOverlay.isVisible());
+        });
 
         primaryStage.setTitle("Klondike Solitaire");
-        primaryStage.setScene(new Scene(game, WINDOW_WIDTH, WINDOW_HEIGHT));
+        primaryStage.setScene(scene);
+        primaryStage.setMinWidth(MIN_WINDOW_WIDTH);
+        primaryStage.setMinHeight(MIN_WINDOW_HEIGHT);
         primaryStage.show();
     }
 
+    @Override
+    public void stop() throws IOException {
+        eventLog.close();
+        eventStream.close();
+        if (dealLibrary != null)
+            dealLibrary.close();
+        if (tablebase != null)
+            tablebase.close();
+        Path saveFile = getSaveFile();
+        if (view.isGameWon()) {
+            Files.deleteIfExists(saveFile);
+        } else {
+            Files.createDirectories(saveFile.getParent());
+            view.save(saveFile);
+        }
+    }
+
+    /**
+     * Starts {@code deal} if one was given, otherwise resumes the saved game
+     * or deals a new one.
+     */
+    private <T extends GameView> T createView(Long deal, LongFunction<T> newView, ViewLoader<T> loader) {
+        if (deal != null)
+            return newView.apply(deal);
+        Path saveFile = getSaveFile();
+        if (Files.exists(saveFile)) {
+            try {
+                return loader.load(saveFile);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not resume saved game: " + e);
+            }
+        }
+        return newView.apply(dealSource.getAsLong());
+    }
+
+    private void useDealLibrary(DealLibrary.Difficulty difficulty, Rules rules) {
+        DealLibrary library = openDealLibrary(rules);
+        if (library == null)
+            return;
+        if (library.count(difficulty) == 0) {
+            System.err.println("No " + difficulty + " deals for these rules in the deal library");
+            return;
+        }
+        dealSource = () -> library.pick(difficulty);
+    }
+
+    /**
+     * Opens the deal library for {@code rules} once and keeps it open until
+     * the application stops, or returns null if there is none.
+     */
+    private DealLibrary openDealLibrary(Rules rules) {
+        if (dealLibrary != null)
+            return dealLibrary;
+        Path file = getDataDirectory().resolve("deals.lib");
+        if (!Files.exists(file))
+            return null;
+        try {
+            DealLibrary library = DealLibrary.open(file);
+            if (!library.matches(rules)) {
+                System.err.println("No deals for these rules in " + file);
+                library.close();
+                return null;
+            }
+            dealLibrary = library;
+            return library;
+        } catch (IOException e) {
+            System.err.println("Could not open deal library: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static EndgameTablebase openTablebase(Rules rules) {
+        Path file = getDataDirectory().resolve("endgame.tb");
+        if (!Files.exists(file))
+            return null;
+        try {
+            EndgameTablebase tablebase = EndgameTablebase.open(file);
+            if (tablebase.matches(rules))
+                return tablebase;
+            tablebase.close();
+        } catch (IOException e) {
+            System.err.println("Could not open endgame tablebase: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Deals and moves of the game on screen, for spectator views, replay
+     * recorders and stats in the same process.
+     */
+    public GameEventStream getEventStream() {
+        return eventStream;
+    }
+
+    public static Path getDataDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".klondike");
+    }
+
+    private static Path getSaveFile() {
+        return getDataDirectory().resolve("save.bin");
+    }
+
 }
@@ -0,0 +1,105 @@
+package com.codecool.klondike;
+
+/**
+ * Standard Klondike building rules from {@link CardTables} with a
+ * configurable draw count, redeal limit and scoring. Move points are
+ * precomputed into a table indexed by source and destination pile.
+ */
+public class KlondikeRules implements Rules {
+
+    public enum Scoring {
+        NONE,
+        STANDARD,
+        VEGAS
+    }
+
+    private final int drawCount;
+    private final int redealLimit;
+    private final Scoring scoring;
+    private final int[] movePoints = new int[GameState.PILE_COUNT * GameState.PILE_COUNT];
+    private final int flipPoints;
+
+    public KlondikeRules(int drawCount, int redealLimit, Scoring scoring) {
+        this.drawCount = drawCount;
+        this.redealLimit = redealLimit;
+        this.scoring = scoring;
+        for (int from = 0; from < GameState.PILE_COUNT; from++) {
+            for (int to = 0; to < GameState.PILE_COUNT; to++) {
+                movePoints[from * GameState.PILE_COUNT + to] = points(from, to);
+            }
+        }
+        flipPoints = scoring == Scoring.STANDARD ? 5 : 0;
+    }
+
+    private int points(int from, int to) {
+        boolean toFoundation = GameState.isFoundation(to) && !GameState.isFoundation(from);
+        boolean fromFoundation = GameState.isFoundation(from) && !GameState.isFoundation(to);
+        switch (scoring) {
+            case VEGAS:
+                return toFoundation ? 5 : fromFoundation ? -5 : 0;
+            case STANDARD:
+                if (toFoundation)
+                    return 10;
+                if (fromFoundation)
+                    return -15;
+                if (from == GameState.DISCARD && GameState.isTableau(to))
+                    return 5;
+                if (from == GameState.DISCARD && to == GameState.STOCK)
+                    return drawCount == 1 ? -100 : -20;
+                return 0;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    @Override
+    public int getRedealLimit() {
+        return redealLimit;
+    }
+
+    @Override
+    public Scoring getScoring() {
+        return scoring;
+    }
+
+    @Override
+    public boolean canStack(byte card, byte onto) {
+        return CardTables.canStack(card, onto);
+    }
+
+    @Override
+    public boolean canStartTableau(byte card) {
+        return CardTables.isKing(card);
+    }
+
+    @Override
+    public boolean canFound(byte card, byte onto) {
+        return CardTables.canFound(card, onto);
+    }
+
+    @Override
+    public boolean canStartFoundation(byte card) {
+        return CardTables.isAce(card);
+    }
+
+    @Override
+    public boolean isScored() {
+        return scoring != Scoring.NONE;
+    }
+
+    @Override
+    public int getInitialScore() {
+        return scoring == Scoring.VEGAS ? -CardCode.CARD_COUNT : 0;
+    }
+
+    @Override
+    public int score(int move) {
+        int points = movePoints[GameState.moveFrom(move) * GameState.PILE_COUNT + GameState.moveTo(move)];
+        return GameState.isFlipped(move) ? points + flipPoints : points;
+    }
+}
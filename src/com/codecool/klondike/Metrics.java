@@ -0,0 +1,82 @@
+package com.codecool.klondike;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+
+/**
+ * Latency histograms of the interactive hot paths. Recording is cheap
+ * enough to stay on in normal play; the numbers can be shown with
+ * {@link #createOverlay()} or read from {@link #report()}.
+ */
+public class Metrics {
+
+    public static final LatencyHistogram MOUSE_DRAGGED = new LatencyHistogram("drag");
+    public static final LatencyHistogram MOUSE_RELEASED = new LatencyHistogram("release");
+    public static final LatencyHistogram MOUSE_CLICKED = new LatencyHistogram("click");
+    public static final LatencyHistogram ANIMATION = new LatencyHistogram("slide");
+    public static final LatencyHistogram DEAL = new LatencyHistogram("deal");
+    public static final LatencyHistogram IMAGE_LOAD = new LatencyHistogram("images");
+
+    private static final LatencyHistogram[] ALL = {
+            MOUSE_DRAGGED, MOUSE_RELEASED, MOUSE_CLICKED, ANIMATION, DEAL, IMAGE_LOAD
+    };
+    private static final Duration OVERLAY_REFRESH = Duration.millis(500);
+
+    /**
+     * Wraps an event handler so that every call is recorded in
+     * {@code histogram}.
+     */
+    public static <T extends Event> EventHandler<T> timed(LatencyHistogram histogram, EventHandler<T> handler) {
+        return e -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(e);
+            } finally {
+                histogram.recordSince(start);
+            }
+        };
+    }
+
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (LatencyHistogram histogram : ALL) {
+            report.append(histogram).append('\n');
+        }
+        return report.toString();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : ALL) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Returns a hidden text node that refreshes itself with the current
+     * {@link #report()} while it is visible.
+     */
+    public static Text createOverlay() {
+        Text overlay = new Text();
+        overlay.setFill(Color.WHITE);
+        overlay.setStyle("-fx-font: 13 monospace;");
+        overlay.setMouseTransparent(true);
+        overlay.setVisible(false);
+
+        Timeline refresh = new Timeline(new KeyFrame(OVERLAY_REFRESH, e -> overlay.setText(report())));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+        overlay.visibleProperty().addListener((observable, wasVisible, visible) -> {
+            if (visible) {
+                overlay.setText(report());
+                refresh.play();
+            } else {
+                refresh.stop();
+            }
+        });
+        return overlay;
+    }
+}
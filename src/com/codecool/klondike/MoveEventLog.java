@@ -0,0 +1,194 @@
+package com.codecool.klondike;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Audit trail of every deal and move. The FX thread only writes two longs
+ * into an {@link EventRing}; its daemon thread formats the records in
+ * batches and appends them to a log file that is rotated by size, keeping
+ * {@value #ROTATED_FILES} older files. When the ring is full new events are
+ * dropped and counted rather than blocking the game.
+ *
+ * <pre>1697040000000 move 7>2 x1 AH flip</pre>
+ */
+public class MoveEventLog implements AutoCloseable {
+
+    public static final MoveEventLog DISABLED = new MoveEventLog();
+
+    private static final int DEAL = 0;
+    private static final int RESUME = 1;
+    private static final int MOVE = 2;
+    private static final int UNDO = 3;
+    private static final int REDO = 4;
+    private static final String[] TYPE_NAMES = {"deal", "resume", "move", "undo", "redo"};
+    private static final String RANKS = "A23456789TJQK";
+    private static final String SUITS = "HDSC";
+    private static final int NO_CARD = -1;
+
+    private static final int CAPACITY = 1 << 12;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_FILE_BYTES = 1 << 20;
+    private static final int ROTATED_FILES = 2;
+
+    private final EventRing ring;
+    private final Path file;
+    private Writer out;
+    private long fileBytes;
+
+    private MoveEventLog() {
+        ring = null;
+        file = null;
+    }
+
+    private MoveEventLog(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getParent());
+        openFile();
+        ring = new EventRing("move-event-log", CAPACITY, CAPACITY, IDLE_PARK_NANOS, new FileSink());
+    }
+
+    public static MoveEventLog open(Path file) throws IOException {
+        return new MoveEventLog(file);
+    }
+
+    public void deal(long dealNumber) {
+        append((long) DEAL << 56 | dealNumber & 0xFFFFFFFFFFFFFFL);
+    }
+
+    public void resume(long dealNumber) {
+        append((long) RESUME << 56 | dealNumber & 0xFFFFFFFFFFFFFFL);
+    }
+
+    /**
+     * Logs a move right after it was applied to {@code state}, so the first
+     * moved card can still be read from the destination pile.
+     */
+    public void move(int move, GameState state) {
+        append(MOVE, move, movedCard(move, state));
+    }
+
+    public void undo(int move) {
+        append(UNDO, move, NO_CARD);
+    }
+
+    public void redo(int move, GameState state) {
+        append(REDO, move, movedCard(move, state));
+    }
+
+    public long getDroppedCount() {
+        return ring == null ? 0 : ring.getDroppedCount();
+    }
+
+    private static int movedCard(int move, GameState state) {
+        int to = GameState.moveTo(move);
+        if (to == GameState.STOCK)
+            return NO_CARD;
+        return state.card(to, state.size(to) - GameState.moveCount(move));
+    }
+
+    private void append(int type, int move, int card) {
+        append((long) type << 56 | (card + 1L) << 32 | (move & 0xFFFFFFFFL));
+    }
+
+    private void append(long payload) {
+        if (ring != null)
+            ring.append(payload);
+    }
+
+    private static void format(StringBuilder batch, long time, long payload) {
+        int type = (int) (payload >>> 56);
+        batch.append(time).append(' ');
+        if (type >= TYPE_NAMES.length) {
+            batch.append("unknown ").append(Long.toHexString(payload)).append('\n');
+            return;
+        }
+        batch.append(TYPE_NAMES[type]).append(' ');
+        if (type == DEAL || type == RESUME) {
+            batch.append(payload & 0xFFFFFFFFFFFFFFL);
+        } else {
+            int move = (int) payload;
+            batch.append(GameState.moveFrom(move)).append('>').append(GameState.moveTo(move))
+                    .append(" x").append(GameState.moveCount(move));
+            byte card = (byte) ((payload >>> 32) - 1);
+            if (card != NO_CARD)
+                batch.append(' ').append(RANKS.charAt(CardCode.rank(card) - 1)).append(SUITS.charAt(CardCode.suit(card) - 1));
+            if (GameState.isFlipped(move))
+                batch.append(" flip");
+        }
+        batch.append('\n');
+    }
+
+    private void write(CharSequence batch) throws IOException {
+        out.append(batch);
+        out.flush();
+        fileBytes += batch.length();
+        if (fileBytes >= MAX_FILE_BYTES) {
+            out.close();
+            for (int i = ROTATED_FILES - 1; i > 0; i--) {
+                Path older = rotated(i);
+                if (Files.exists(older))
+                    Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            openFile();
+        }
+    }
+
+    private Path rotated(int generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    private void openFile() throws IOException {
+        out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = Files.size(file);
+    }
+
+    /**
+     * Formats drained events and appends them to the log file.
+     */
+    private class FileSink implements EventRing.Sink {
+
+        private final StringBuilder batch = new StringBuilder();
+
+        @Override
+        public boolean drain(EventRing ring, long from, long end) {
+            batch.setLength(0);
+            for (long position = from; position < end; position++) {
+                format(batch, ring.time(position), ring.payload(position));
+            }
+            try {
+                write(batch);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Move log disabled: " + e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public void closed() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Could not close move log: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes out what is still queued and stops the background thread.
+     */
+    @Override
+    public void close() {
+        if (ring != null)
+            ring.close();
+    }
+}
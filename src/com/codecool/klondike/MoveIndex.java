@@ -0,0 +1,134 @@
+package com.codecool.klondike;
+
+/**
+ * Legal moves of a {@link GameState}, kept as a source-by-destination
+ * matrix. A pile can receive at most one move from any other pile, so when a
+ * pile changes only its row and column are recomputed. The best-ranked move
+ * is cached until the next change.
+ */
+public class MoveIndex implements GameState.PileListener {
+
+    public static final int NO_MOVE = 0;
+
+    private static final int FOUNDATION_SCORE = 100;
+    private static final int REVEAL_SCORE = 80;
+    private static final int WASTE_SCORE = 60;
+    private static final int DRAW_SCORE = 10;
+    private static final int RECYCLE_SCORE = 5;
+
+    private final GameState state;
+    private final int[] moves = new int[GameState.PILE_COUNT * GameState.PILE_COUNT];
+    private final int[] scores = new int[GameState.PILE_COUNT * GameState.PILE_COUNT];
+    private int bestMove = NO_MOVE;
+    private boolean bestValid;
+
+    public MoveIndex(GameState state) {
+        this.state = state;
+        state.setPileListener(this);
+        rebuild();
+    }
+
+    public void rebuild() {
+        for (int pile = 0; pile < GameState.PILE_COUNT; pile++) {
+            updateRow(pile);
+        }
+        bestValid = false;
+    }
+
+    @Override
+    public void pileChanged(int pile) {
+        updateRow(pile);
+        for (int source = 0; source < GameState.PILE_COUNT; source++) {
+            if (source != pile)
+                update(source, pile);
+        }
+        bestValid = false;
+    }
+
+    /**
+     * The highest ranked move worth suggesting, or {@link #NO_MOVE}.
+     */
+    public int bestMove() {
+        if (!bestValid) {
+            int bestScore = 0;
+            bestMove = NO_MOVE;
+            for (int i = 0; i < moves.length; i++) {
+                if (scores[i] > bestScore) {
+                    bestScore = scores[i];
+                    bestMove = moves[i];
+                }
+            }
+            bestValid = true;
+        }
+        return bestMove;
+    }
+
+    /**
+     * A legal move of the top card of {@code source}, foundations first, or
+     * {@link #NO_MOVE}.
+     */
+    public int moveForTopCard(int source) {
+        int row = source * GameState.PILE_COUNT;
+        for (int dest = GameState.FOUNDATION; dest < GameState.PILE_COUNT; dest++) {
+            int move = moves[row + dest];
+            if (move != NO_MOVE && GameState.moveCount(move) == 1)
+                return move;
+        }
+        return NO_MOVE;
+    }
+
+    public int move(int source, int dest) {
+        return moves[source * GameState.PILE_COUNT + dest];
+    }
+
+    private void updateRow(int source) {
+        for (int dest = 0; dest < GameState.PILE_COUNT; dest++) {
+            update(source, dest);
+        }
+    }
+
+    private void update(int source, int dest) {
+        int slot = source * GameState.PILE_COUNT + dest;
+        int move = find(source, dest);
+        moves[slot] = move;
+        scores[slot] = move == NO_MOVE ? 0 : score(move);
+    }
+
+    private int find(int source, int dest) {
+        if (source == GameState.STOCK)
+            return dest == GameState.DISCARD ? state.drawMove() : NO_MOVE;
+        if (dest == GameState.STOCK)
+            return source == GameState.DISCARD ? state.redealMove() : NO_MOVE;
+        if (source == dest || dest == GameState.DISCARD || state.isEmpty(source))
+            return NO_MOVE;
+        if (!GameState.isTableau(source)) {
+            boolean allowed = source == GameState.DISCARD || GameState.isTableau(dest);
+            return allowed && state.canPlace(state.top(source), dest) ?
+                    GameState.move(source, dest, 1) : NO_MOVE;
+        }
+        int size = state.size(source);
+        int first = GameState.isFoundation(dest) ? size - 1 : state.firstFaceUp(source);
+        for (int position = first; position < size; position++) {
+            if (state.canPlace(state.card(source, position), dest))
+                return GameState.move(source, dest, size - position);
+        }
+        return NO_MOVE;
+    }
+
+    private int score(int move) {
+        int from = GameState.moveFrom(move);
+        int to = GameState.moveTo(move);
+        if (GameState.isFoundation(to))
+            return FOUNDATION_SCORE;
+        if (from == GameState.STOCK)
+            return DRAW_SCORE;
+        if (to == GameState.STOCK)
+            return RECYCLE_SCORE;
+        if (from == GameState.DISCARD)
+            return WASTE_SCORE;
+        if (GameState.isTableau(from) && !MoveOrder.isPointless(state, move) &&
+                GameState.moveCount(move) == state.size(from) - state.firstFaceUp(from))
+            return REVEAL_SCORE + state.firstFaceUp(from);
+        return 0;
+    }
+}
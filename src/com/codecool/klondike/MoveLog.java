@@ -0,0 +1,55 @@
+package com.codecool.klondike;
+
+import java.util.Arrays;
+
+/**
+ * Undo/redo history of packed {@link GameState} moves in a growable int
+ * array: four bytes per move, no objects.
+ */
+public class MoveLog {
+
+    private int[] moves = new int[64];
+    private int size;
+    private int position;
+
+    public void record(int move) {
+        if (position == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[position++] = move;
+        size = position;
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < size;
+    }
+
+    public int undo() {
+        return moves[--position];
+    }
+
+    public int redo() {
+        return moves[position++];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+}
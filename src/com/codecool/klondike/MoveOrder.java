@@ -0,0 +1,69 @@
+package com.codecool.klondike;
+
+/**
+ * Move classification shared by the solver and the auto-play policies.
+ */
+public final class MoveOrder {
+
+    public static final int FOUNDATION = 0;
+    public static final int REVEAL = 1;
+    public static final int WASTE = 2;
+    public static final int STOCK = 3;
+    public static final int OTHER = 4;
+    public static final int CATEGORY_COUNT = 5;
+
+    private MoveOrder() {
+    }
+
+    /**
+     * Foundation moves first, then tableau moves that turn over or clear a
+     * card, waste plays, the stock, and everything else.
+     */
+    public static int category(GameState state, int move) {
+        int from = GameState.moveFrom(move);
+        int to = GameState.moveTo(move);
+        if (GameState.isFoundation(to))
+            return FOUNDATION;
+        if (from == GameState.STOCK || to == GameState.STOCK)
+            return STOCK;
+        if (from == GameState.DISCARD)
+            return WASTE;
+        if (GameState.isTableau(from) && GameState.moveCount(move) == state.size(from) - state.firstFaceUp(from))
+            return REVEAL;
+        return OTHER;
+    }
+
+    /**
+     * A foundation move is always safe when no card left in play could ever
+     * need to be placed on the moved card.
+     */
+    public static boolean isSafe(GameState state, int move) {
+        int to = GameState.moveTo(move);
+        if (!GameState.isFoundation(to))
+            return false;
+        byte card = state.top(GameState.moveFrom(move));
+        int rank = CardCode.rank(card);
+        if (rank <= 2)
+            return true;
+        boolean red = CardCode.isRed(card);
+        for (int pile = GameState.FOUNDATION; pile < GameState.TABLEAU; pile++) {
+            if (pile != to && (state.isEmpty(pile) ||
+                    CardCode.isRed(state.top(pile)) != red) && state.size(pile) < rank - 1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moving a whole tableau pile onto an empty tableau pile only swaps
+     * which column holds the cards, so the position is the same game and
+     * skipping the move never loses a win. Onto a card it frees the
+     * column, so that move is kept.
+     */
+    public static boolean isPointless(GameState state, int move) {
+        int from = GameState.moveFrom(move);
+        int to = GameState.moveTo(move);
+        return GameState.isTableau(from) && GameState.isTableau(to) &&
+                GameState.moveCount(move) == state.size(from) && state.isEmpty(to);
+    }
+}
@@ -1,6 +1,7 @@
 package com.codecool.klondike;
 
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.effect.GaussianBlur;
 import javafx.scene.layout.Background;
@@ -16,11 +17,23 @@ public class Pile extends Pane {
     private PileType pileType;
     private String name;
     private double cardGap;
+    private double maxSpread = Double.POSITIVE_INFINITY;
+    private double appliedGap;
     private ObservableList<Card> cards = FXCollections.observableArrayList();
+    private Background background;
+    private int index = -1;
+
+    private static final Background HIGHLIGHT_BACKGROUND =
+            new Background(new BackgroundFill(Color.rgb(255, 215, 0, 0.4), null, null));
 
     public Pile(PileType pileType, String name, double cardGap) {
         this.pileType = pileType;
         this.cardGap = cardGap;
+        appliedGap = cardGap;
+        cards.addListener((ListChangeListener<Card>) change -> {
+            if (getCardGap() != appliedGap)
+                relayoutCards();
+        });
     }
 
     public PileType getPileType() {
@@ -31,8 +44,53 @@ public class Pile extends Pane {
         return name;
     }
 
+    /**
+     * The {@link GameState} pile this pile shows, or -1.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * The gap between cards right now: the nominal gap, compressed when the
+     * pile would otherwise spread further than {@link #setCardGap} allows.
+     */
     public double getCardGap() {
-        return cardGap;
+        return TableLayout.compress(cardGap, maxSpread, cards.size());
+    }
+
+    /**
+     * The gap between cards once the pile holds {@code count} cards.
+     */
+    public double getCardGap(int count) {
+        return TableLayout.compress(cardGap, maxSpread, count);
+    }
+
+    /**
+     * Sets the nominal gap and how far the last card's top may be below
+     * the first card's, then moves the cards to match.
+     */
+    public void setCardGap(double cardGap, double maxSpread) {
+        this.cardGap = cardGap;
+        this.maxSpread = maxSpread;
+        relayoutCards();
+    }
+
+    /**
+     * Puts every card back at its place in the pile, after the pile moved
+     * or its gap changed.
+     */
+    public void relayoutCards() {
+        appliedGap = getCardGap();
+        for (int i = 0; i < cards.size(); i++) {
+            Card card = cards.get(i);
+            card.setLayoutX(getLayoutX());
+            card.setLayoutY(getLayoutY() + i * appliedGap);
+        }
     }
 
     public ObservableList<Card> getCards() {
@@ -58,12 +116,24 @@ public class Pile extends Pane {
         layoutCard(card);
     }
 
+    /**
+     * Replaces the whole pile in one list change, without reordering the
+     * cards in the scene.
+     */
+    public void setCards(List<Card> newCards) {
+        cards.setAll(newCards);
+        for (Card card : newCards) {
+            card.setContainingPile(this);
+        }
+        relayoutCards();
+    }
+
     private void layoutCard(Card card) {
         card.relocate(card.getLayoutX() + card.getTranslateX(), card.getLayoutY() + card.getTranslateY());
         card.setTranslateX(0);
         card.setTranslateY(0);
         card.setLayoutX(getLayoutX());
-        card.setLayoutY(getLayoutY() + (cards.size() - 1) * cardGap);
+        card.setLayoutY(getLayoutY() + (cards.size() - 1) * appliedGap);
     }
 
     public Card getTopCard() {
@@ -73,15 +143,28 @@ public class Pile extends Pane {
             return cards.get(cards.size() - 1);
     }
 
+    /**
+     * Gives the empty pile its shaded slot. The size comes from the table
+     * layout, which sets every pile to the current card size.
+     */
     public void setBlurredBackground() {
-        setPrefSize(Card.WIDTH, Card.HEIGHT);
         BackgroundFill backgroundFill = new BackgroundFill(Color.gray(0.0, 0.2), null, null);
-        Background background = new Background(backgroundFill);
+        background = new Background(backgroundFill);
         GaussianBlur gaussianBlur = new GaussianBlur(10);
         setBackground(background);
         setEffect(gaussianBlur);
     }
 
+    public void setHighlighted(boolean highlighted) {
+        if (isEmpty()) {
+            setBackground(highlighted ? HIGHLIGHT_BACKGROUND : background);
+        } else {
+            getTopCard().getDropShadow().setColor(highlighted ? Color.GOLD : Color.gray(0, 0.75));
+        }
+        if (!highlighted)
+            setBackground(background);
+    }
+
     public enum PileType {
         STOCK,
         DISCARD,
@@ -0,0 +1,45 @@
+package com.codecool.klondike;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks the next move for a headless game. Returns an index into
+ * {@code moves}, or -1 to resign.
+ */
+public interface PlayPolicy {
+
+    PlayPolicy RANDOM = (state, moves, count, random) -> {
+        int playable = 0;
+        for (int i = 0; i < count; i++) {
+            if (!MoveOrder.isPointless(state, moves[i]))
+                moves[playable++] = moves[i];
+        }
+        return playable == 0 ? -1 : random.nextInt(playable);
+    };
+
+    PlayPolicy GREEDY = (state, moves, count, random) -> {
+        int best = -1;
+        int bestCategory = MoveOrder.OTHER;
+        for (int i = 0; i < count; i++) {
+            int category = MoveOrder.category(state, moves[i]);
+            if (category < bestCategory && !MoveOrder.isPointless(state, moves[i])) {
+                best = i;
+                bestCategory = category;
+            }
+        }
+        return best;
+    };
+
+    int choose(GameState state, int[] moves, int count, SplittableRandom random);
+
+    static PlayPolicy byName(String name) {
+        switch (name) {
+            case "random":
+                return RANDOM;
+            case "greedy":
+                return GREEDY;
+            default:
+                throw new IllegalArgumentException("Unknown policy: " + name);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.codecool.klondike;
+
+import java.util.Map;
+
+/**
+ * A Klondike rule variant: how many cards a draw turns over, how often the
+ * waste may be recycled, which cards may be placed where and how moves are
+ * scored. Placement checks are called from move generation, so
+ * implementations should answer them with table lookups.
+ */
+public interface Rules {
+
+    int UNLIMITED_REDEALS = -1;
+
+    Rules DEFAULT = new KlondikeRules(1, UNLIMITED_REDEALS, KlondikeRules.Scoring.NONE);
+
+    int getDrawCount();
+
+    /**
+     * How many times the waste may be turned back into the stock, or
+     * {@link #UNLIMITED_REDEALS}.
+     */
+    int getRedealLimit();
+
+    KlondikeRules.Scoring getScoring();
+
+    boolean canStack(byte card, byte onto);
+
+    boolean canStartTableau(byte card);
+
+    boolean canFound(byte card, byte onto);
+
+    boolean canStartFoundation(byte card);
+
+    boolean isScored();
+
+    int getInitialScore();
+
+    /**
+     * Points for a move as returned by {@link GameState#applyMove}; undoing
+     * it takes them back.
+     */
+    int score(int move);
+
+    /**
+     * Reads {@code draw=1|3}, {@code redeals=<n>|unlimited} and
+     * {@code scoring=none|standard|vegas}; missing options keep the defaults.
+     */
+    static Rules fromOptions(Map<String, String> options) {
+        int drawCount = Integer.parseInt(options.getOrDefault("draw", "1"));
+        String redeals = options.getOrDefault("redeals", "unlimited");
+        int redealLimit = redeals.equals("unlimited") ? UNLIMITED_REDEALS : Integer.parseInt(redeals);
+        KlondikeRules.Scoring scoring = KlondikeRules.Scoring.valueOf(
+                options.getOrDefault("scoring", "none").toUpperCase());
+        if (drawCount < 1 || drawCount > 3)
+            throw new IllegalArgumentException("Draw count must be 1 to 3: " + drawCount);
+        if (redealLimit < UNLIMITED_REDEALS)
+            throw new IllegalArgumentException("Bad redeal limit: " + redeals);
+        return new KlondikeRules(drawCount, redealLimit, scoring);
+    }
+}
@@ -0,0 +1,173 @@
+package com.codecool.klondike;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Command-line batch mode: plays a range of seeded deals headlessly with a
+ * {@link PlayPolicy} on a work-stealing pool and streams one CSV row per
+ * deal, in deal order.
+ *
+ * <pre>java com.codecool.klondike.Simulation deals=100000 start=1 policy=greedy threads=8 out=sim.csv [archive=games.bin] [draw=3 redeals=2]</pre>
+ */
+public class Simulation {
+
+    private static final String USAGE =
+            "com.codecool.klondike.Simulation deals=100000 start=1 policy=greedy threads=8 out=sim.csv [archive=games.bin] [draw=3 redeals=2]";
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int MAX_MOVES_PER_GAME = 1000;
+    private static final int MAX_MOVES_WITHOUT_PROGRESS = 200;
+
+    private final PlayPolicy policy;
+    private final Rules rules;
+
+    public Simulation(PlayPolicy policy) {
+        this(policy, Rules.DEFAULT);
+    }
+
+    public Simulation(PlayPolicy policy, Rules rules) {
+        this.policy = policy;
+        this.rules = rules;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Map<String, String> options = CommandLine.parse(args, USAGE);
+        long deals = Long.parseLong(options.getOrDefault("deals", "10000"));
+        long start = Long.parseLong(options.getOrDefault("start", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        PlayPolicy policy = PlayPolicy.byName(options.getOrDefault("policy", "greedy"));
+        String out = options.getOrDefault("out", "simulation.csv");
+        String archive = options.get("archive");
+        Rules rules = Rules.fromOptions(options);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (Writer writer = Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8);
+             GameArchive.Writer games = archive == null ? null : GameArchive.create(Paths.get(archive), rules)) {
+            new Simulation(policy, rules).run(pool, start, deals, writer, games);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays {@code deals} deals starting at {@code start}, writing CSV rows
+     * to {@code out} and, when {@code archive} is not null, every game's
+     * moves to it.
+     */
+    public void run(ForkJoinPool pool, long start, long deals, Writer out, GameArchive.Writer archive)
+            throws IOException, InterruptedException, ExecutionException {
+        BufferedWriter csv = new BufferedWriter(out);
+        csv.write("deal,won,moves,foundation\n");
+
+        long begin = System.nanoTime();
+        long games = 0;
+        long wins = 0;
+        long totalMoves = 0;
+        int window = pool.getParallelism() * 4;
+        ArrayDeque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        long next = start;
+        long end = start + deals;
+        while (next < end || !inFlight.isEmpty()) {
+            while (next < end && inFlight.size() < window) {
+                Chunk chunk = new Chunk(next, (int) Math.min(CHUNK_SIZE, end - next), archive != null);
+                inFlight.add(pool.submit(() -> play(chunk)));
+                next += chunk.moves.length;
+            }
+            Chunk chunk = inFlight.poll().get();
+            for (int i = 0; i < chunk.moves.length; i++) {
+                csv.write(chunk.firstDeal + i + "," + (chunk.won[i] ? 1 : 0) + "," +
+                        chunk.moves[i] + "," + chunk.foundation[i] + "\n");
+                if (archive != null)
+                    archive.append(chunk.firstDeal + i, chunk.logs[i]);
+                games++;
+                totalMoves += chunk.moves[i];
+                if (chunk.won[i])
+                    wins++;
+            }
+        }
+        csv.flush();
+
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("games=%d wins=%d winRate=%.4f movesPerGame=%.1f gamesPerSecond=%.0f%n",
+                games, wins, games == 0 ? 0 : (double) wins / games,
+                games == 0 ? 0 : (double) totalMoves / games, games / seconds);
+    }
+
+    private Chunk play(Chunk chunk) {
+        GameState state = new GameState(rules);
+        byte[] deck = new byte[CardCode.CARD_COUNT];
+        int[] moves = new int[GameState.MAX_MOVES];
+        for (int i = 0; i < chunk.moves.length; i++) {
+            long dealNumber = chunk.firstDeal + i;
+            Deal.shuffle(dealNumber, deck);
+            state.deal(deck);
+            MoveLog log = chunk.logs == null ? null : (chunk.logs[i] = new MoveLog());
+            chunk.moves[i] = playGame(state, moves, new SplittableRandom(Deal.mix(dealNumber)), log);
+            chunk.won[i] = state.isWon();
+            chunk.foundation[i] = state.foundationCardCount();
+        }
+        return chunk;
+    }
+
+    /**
+     * Plays from {@code state} until the game is won, the policy resigns or
+     * no card has reached a foundation or been turned over for a while.
+     * Returns the number of moves played and records them in {@code log}
+     * unless it is null.
+     */
+    public int playGame(GameState state, int[] moves, SplittableRandom random, MoveLog log) {
+        int played = 0;
+        int sinceProgress = 0;
+        int progress = progress(state);
+        while (played < MAX_MOVES_PER_GAME && sinceProgress < MAX_MOVES_WITHOUT_PROGRESS && !state.isWon()) {
+            int count = state.generateMoves(moves);
+            int choice = policy.choose(state, moves, count, random);
+            if (choice < 0)
+                break;
+            int applied = state.applyMove(moves[choice]);
+            if (log != null)
+                log.record(applied);
+            played++;
+            int current = progress(state);
+            if (current > progress) {
+                progress = current;
+                sinceProgress = 0;
+            } else {
+                sinceProgress++;
+            }
+        }
+        return played;
+    }
+
+    private static int progress(GameState state) {
+        return state.foundationCardCount() - state.faceDownCount();
+    }
+
+    private static final class Chunk {
+        final long firstDeal;
+        final boolean[] won;
+        final int[] moves;
+        final int[] foundation;
+        final MoveLog[] logs;
+
+        Chunk(long firstDeal, int size, boolean keepLogs) {
+            this.firstDeal = firstDeal;
+            this.won = new boolean[size];
+            this.moves = new int[size];
+            this.foundation = new int[size];
+            this.logs = keepLogs ? new MoveLog[size] : null;
+        }
+    }
+}
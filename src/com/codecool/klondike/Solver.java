@@ -0,0 +1,244 @@
+package com.codecool.klondike;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Depth-first Klondike solver over {@link GameState}. The first few plies
+ * are split into fork/join tasks that share one {@link TranspositionTable};
+ * below that each worker searches sequentially on its own move stack.
+ * <p>
+ * Only moves that cannot change the answer are pruned: a safe foundation
+ * move is played alone ({@link MoveOrder#isSafe}), and a whole column moved
+ * onto an empty column is skipped ({@link MoveOrder#isPointless}) because it
+ * only swaps two columns, which the rules treat alike. So UNWINNABLE means
+ * no sequence of moves wins, not that a pruned search found none.
+ */
+public class Solver {
+
+    public enum Result {
+        WINNABLE,
+        UNWINNABLE,
+        UNKNOWN
+    }
+
+    private static final int MAX_DEPTH = 2048;
+    private static final int SPLIT_DEPTH = 3;
+    private static final int CHECK_INTERVAL = 1024;
+    private static final int MOVE_STACK_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<int[]> moveStacks =
+            ThreadLocal.withInitial(() -> new int[MOVE_STACK_SIZE]);
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+    private final long nodeBudget;
+    private final long timeBudgetNanos;
+
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong generatedMoves = new AtomicLong();
+    private final AtomicInteger solutionLength = new AtomicInteger();
+    private EndgameTablebase tablebase;
+    private EndgameTablebase activeTablebase;
+    private volatile boolean won;
+    private volatile boolean exhausted;
+    private long deadline;
+
+    /**
+     * @param pool      workers to split the search across, or {@code null}
+     *                  to search on the calling thread only
+     * @param tableBits log2 of the transposition table size
+     */
+    public Solver(ForkJoinPool pool, int tableBits, long nodeBudget, long timeBudgetMillis) {
+        this.pool = pool;
+        this.table = new TranspositionTable(tableBits);
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+    }
+
+    public Solver(long nodeBudget, long timeBudgetMillis) {
+        this(ForkJoinPool.commonPool(), 22, nodeBudget, timeBudgetMillis);
+    }
+
+    /**
+     * Lets searches stop at endgame positions whose result is already in
+     * {@code tablebase}. It is only used for positions under the rules it
+     * was built for.
+     */
+    public synchronized void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public Result solve(List<Card> deck) {
+        return solve(Card.toCodes(deck));
+    }
+
+    public Result solve(byte[] deal) {
+        return solve(deal, Rules.DEFAULT);
+    }
+
+    public Result solve(byte[] deal, Rules rules) {
+        GameState state = new GameState(rules);
+        state.deal(deal);
+        return solve(state);
+    }
+
+    public synchronized Result solve(GameState position) {
+        table.newSearch();
+        nodes.set(0);
+        generatedMoves.set(0);
+        solutionLength.set(0);
+        won = false;
+        exhausted = false;
+        deadline = System.nanoTime() + timeBudgetNanos;
+        activeTablebase = tablebase != null && tablebase.matches(position.getRules()) ? tablebase : null;
+
+        GameState root = new GameState();
+        root.copyFrom(position);
+        SearchTask task = new SearchTask(root, 0);
+        if (pool == null) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+        if (won)
+            return Result.WINNABLE;
+        return exhausted ? Result.UNKNOWN : Result.UNWINNABLE;
+    }
+
+    public long getNodeCount() {
+        return nodes.get();
+    }
+
+    /**
+     * Length of the winning line found by the last search, or 0. The search
+     * stops at the first win, so this is an upper bound on the shortest one.
+     */
+    public int getSolutionLength() {
+        return solutionLength.get();
+    }
+
+    /**
+     * Average number of legal moves per position expanded by the last search.
+     */
+    public double getBranchingFactor() {
+        long expanded = nodes.get();
+        return expanded == 0 ? 0 : (double) generatedMoves.get() / expanded;
+    }
+
+    private class SearchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GameState state;
+        private final int depth;
+        private int pendingNodes;
+        private long pendingMoves;
+
+        SearchTask(GameState state, int depth) {
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (pool != null && depth < SPLIT_DEPTH) {
+                split();
+            } else {
+                search(moveStacks.get(), 0, depth);
+                flushNodes();
+            }
+        }
+
+        private void split() {
+            if (!enter(state, depth))
+                return;
+            int[] moves = new int[GameState.MAX_MOVES];
+            int count = state.generateMoves(moves);
+            pendingMoves += count;
+            List<SearchTask> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (MoveOrder.isPointless(state, moves[i]))
+                    continue;
+                GameState child = new GameState();
+                child.copyFrom(state);
+                child.applyMove(moves[i]);
+                tasks.add(new SearchTask(child, depth + 1));
+            }
+            flushNodes();
+            invokeAll(tasks);
+        }
+
+        private void search(int[] moveStack, int offset, int depth) {
+            if (!enter(state, depth))
+                return;
+            if (depth >= MAX_DEPTH || offset + GameState.MAX_MOVES > moveStack.length) {
+                exhausted = true;
+                return;
+            }
+            int end = state.generateMoves(moveStack, offset);
+            pendingMoves += end - offset;
+            for (int i = offset; i < end; i++) {
+                if (MoveOrder.isSafe(state, moveStack[i])) {
+                    play(moveStack, moveStack[i], end, depth);
+                    return;
+                }
+            }
+            for (int pass = 0; pass < MoveOrder.CATEGORY_COUNT; pass++) {
+                for (int i = offset; i < end; i++) {
+                    int move = moveStack[i];
+                    if (MoveOrder.category(state, move) != pass || MoveOrder.isPointless(state, move))
+                        continue;
+                    play(moveStack, move, end, depth);
+                    if (won || exhausted)
+                        return;
+                }
+            }
+        }
+
+        private void play(int[] moveStack, int move, int offset, int depth) {
+            int applied = state.applyMove(move);
+            search(moveStack, offset, depth + 1);
+            state.undoMove(applied);
+        }
+
+        private boolean enter(GameState state, int depth) {
+            if (won || exhausted)
+                return false;
+            if (state.isWon()) {
+                solutionLength.compareAndSet(0, depth);
+                won = true;
+                return false;
+            }
+            long hash = state.hash();
+            if (activeTablebase != null && activeTablebase.isEndgame(state)) {
+                int distance = activeTablebase.probe(hash);
+                if (distance >= 0) {
+                    solutionLength.compareAndSet(0, depth + distance);
+                    won = true;
+                    return false;
+                }
+                if (distance == EndgameTablebase.LOST)
+                    return false;
+            }
+            if (!table.add(hash))
+                return false;
+            if (++pendingNodes == CHECK_INTERVAL)
+                flushNodes();
+            return true;
+        }
+
+        private void flushNodes() {
+            long total = nodes.addAndGet(pendingNodes);
+            generatedMoves.addAndGet(pendingMoves);
+            pendingNodes = 0;
+            pendingMoves = 0;
+            if (total >= nodeBudget || System.nanoTime() - deadline > 0)
+                exhausted = true;
+        }
+    }
+}
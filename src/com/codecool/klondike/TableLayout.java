@@ -0,0 +1,134 @@
+package com.codecool.klondike;
+
+import java.util.Arrays;
+
+/**
+ * Resolution-independent table geometry shared by {@link Game} and
+ * {@link CanvasTable}. Piles are placed in design units, the original
+ * 1400x900 table, and {@link #update} maps them to pixels for the current
+ * size in one pass. The table gets a uniform scale and is centred, and the
+ * buttons keep a fixed-width strip on the left. A tableau column that
+ * would run past the bottom edge has its card gap compressed.
+ */
+public class TableLayout {
+
+    public static final double DESIGN_WIDTH = 1400;
+    public static final double DESIGN_HEIGHT = 900;
+    public static final double BUTTON_STRIP = 95;
+
+    private static final double TOP = 20;
+    private static final double TABLEAU_TOP = 275;
+    private static final double DISCARD_X = 285;
+    private static final double FOUNDATION_X = 610;
+    private static final double COLUMN_PITCH = 180;
+    private static final double BOTTOM_MARGIN = 20;
+    private static final double STOCK_GAP = 1;
+    private static final double TABLEAU_GAP = 30;
+    private static final double MIN_SCALE = 0.25;
+
+    private final double[] pileX = new double[GameState.PILE_COUNT];
+    private final double[] pileY = new double[GameState.PILE_COUNT];
+    private final double[] gaps = new double[GameState.PILE_COUNT];
+    private final double[] spreads = new double[GameState.PILE_COUNT];
+    private double width;
+    private double height;
+    private double scale;
+    private double cardWidth;
+    private double cardHeight;
+
+    public TableLayout() {
+        update(DESIGN_WIDTH, DESIGN_HEIGHT);
+    }
+
+    /**
+     * Recomputes every position for a table of {@code width} x
+     * {@code height} pixels.
+     */
+    public void update(double width, double height) {
+        this.width = width;
+        this.height = height;
+        double tableWidth = DESIGN_WIDTH - BUTTON_STRIP;
+        scale = Math.max(MIN_SCALE, Math.min((width - BUTTON_STRIP) / tableWidth, height / DESIGN_HEIGHT));
+        double left = BUTTON_STRIP + Math.max(0, (width - BUTTON_STRIP - tableWidth * scale) / 2);
+        cardWidth = Card.WIDTH * scale;
+        cardHeight = Card.HEIGHT * scale;
+
+        place(GameState.STOCK, left, TOP * scale, STOCK_GAP * scale);
+        place(GameState.DISCARD, left + (DISCARD_X - BUTTON_STRIP) * scale, TOP * scale, STOCK_GAP * scale);
+        for (int i = 0; i < GameState.FOUNDATION_COUNT; i++) {
+            place(GameState.FOUNDATION + i, left + (FOUNDATION_X - BUTTON_STRIP + i * COLUMN_PITCH) * scale,
+                    TOP * scale, 0);
+        }
+        Arrays.fill(spreads, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < GameState.TABLEAU_COUNT; i++) {
+            int pile = GameState.TABLEAU + i;
+            place(pile, left + i * COLUMN_PITCH * scale, TABLEAU_TOP * scale, TABLEAU_GAP * scale);
+            spreads[pile] = Math.max(0, height - BOTTOM_MARGIN * scale - pileY[pile] - cardHeight);
+        }
+    }
+
+    private void place(int pile, double x, double y, double gap) {
+        pileX[pile] = x;
+        pileY[pile] = y;
+        gaps[pile] = gap;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public double getCardWidth() {
+        return cardWidth;
+    }
+
+    public double getCardHeight() {
+        return cardHeight;
+    }
+
+    public double pileX(int pile) {
+        return pileX[pile];
+    }
+
+    public double pileY(int pile) {
+        return pileY[pile];
+    }
+
+    /**
+     * The gap between cards of {@code pile} when it is not compressed.
+     */
+    public double cardGap(int pile) {
+        return gaps[pile];
+    }
+
+    /**
+     * How far the top of the last card of {@code pile} may be below the
+     * top of its first card before the gap is compressed.
+     */
+    public double maxSpread(int pile) {
+        return spreads[pile];
+    }
+
+    /**
+     * The gap between cards of {@code pile} when it holds {@code count}
+     * cards.
+     */
+    public double cardGap(int pile, int count) {
+        return compress(gaps[pile], spreads[pile], count);
+    }
+
+    public double cardY(int pile, int position, int count) {
+        return pileY[pile] + position * cardGap(pile, count);
+    }
+
+    static double compress(double gap, double maxSpread, int count) {
+        return count <= 1 ? gap : Math.min(gap, maxSpread / (count - 1));
+    }
+}
@@ -0,0 +1,59 @@
+package com.codecool.klondike;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free open-addressing set of position hashes. Each slot keeps
+ * the high bits of a hash tagged with the epoch it was written in, so
+ * starting a new search is O(1) instead of clearing the whole table.
+ */
+public class TranspositionTable {
+
+    private static final int EPOCH_BITS = 16;
+    private static final long EPOCH_MASK = (1L << EPOCH_BITS) - 1;
+    private static final int MAX_PROBES = 16;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private volatile long epoch = 1;
+
+    public TranspositionTable(int sizeBits) {
+        slots = new AtomicLongArray(1 << sizeBits);
+        mask = (1 << sizeBits) - 1;
+    }
+
+    public void newSearch() {
+        long next = (epoch + 1) & EPOCH_MASK;
+        if (next == 0) {
+            for (int i = 0; i < slots.length(); i++) {
+                slots.set(i, 0);
+            }
+            next = 1;
+        }
+        epoch = next;
+    }
+
+    /**
+     * Records a hash and returns {@code false} if it was already present in
+     * the current search. A full probe window counts as "not present".
+     */
+    public boolean add(long hash) {
+        long current = epoch;
+        long entry = (hash & ~EPOCH_MASK) | current;
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (index + probe) & mask;
+            long existing = slots.get(slot);
+            while ((existing & EPOCH_MASK) != current) {
+                if (slots.compareAndSet(slot, existing, entry)) {
+                    return true;
+                }
+                existing = slots.get(slot);
+            }
+            if (existing == entry) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+package com.codecool.klondike;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for {@link GameState}: one random 64-bit key per
+ * (pile, position, card, face) combination.
+ * <p>
+ * Hashes are canonical over the symmetries of the game, so every
+ * equivalent position gets the same hash:
+ * <ul>
+ * <li>foundations are interchangeable, so a foundation card has one key
+ * whichever foundation holds it;</li>
+ * <li>tableau columns are interchangeable, so all columns share keys and
+ * column hashes are mixed and added, which does not depend on their
+ * order;</li>
+ * <li>the two red suits, and the two black suits, play alike, so the
+ * smallest hash of the four same-colour suit permutations is used.</li>
+ * </ul>
+ */
+public final class Zobrist {
+
+    public static final int SYMMETRY_COUNT = 4;
+
+    private static final int MAX_PILE_SIZE = 32;
+    private static final int CARD_SLOTS = CardCode.CARD_COUNT * 2;
+    private static final long[] KEYS = new long[GameState.PILE_COUNT * MAX_PILE_SIZE * CARD_SLOTS];
+    private static final long[] REDEAL_KEYS = new long[64];
+    private static final byte[] PERMUTED = new byte[SYMMETRY_COUNT * CardCode.CARD_COUNT];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x4b4c4f4e44494b45L);
+        for (int i = 0; i < KEYS.length; i++) {
+            KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < REDEAL_KEYS.length; i++) {
+            REDEAL_KEYS[i] = random.nextLong();
+        }
+        for (int symmetry = 0; symmetry < SYMMETRY_COUNT; symmetry++) {
+            for (int i = 0; i < CardCode.CARD_COUNT; i++) {
+                int suit = i / CardCode.RANK_COUNT;
+                suit ^= suit < 2 ? symmetry & 1 : symmetry >> 1;
+                PERMUTED[symmetry * CardCode.CARD_COUNT + i] = (byte) (suit * CardCode.RANK_COUNT + i % CardCode.RANK_COUNT);
+            }
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * The key of {@code card} at {@code position} in {@code pile} once the
+     * suits are permuted by {@code symmetry}. All tableau columns share
+     * keys, and foundation cards ignore their pile and position.
+     */
+    public static long key(int symmetry, int pile, int position, byte card) {
+        if (GameState.isFoundation(pile)) {
+            pile = GameState.FOUNDATION;
+            position = 0;
+        } else if (GameState.isTableau(pile)) {
+            pile = GameState.TABLEAU;
+        }
+        int slot = PERMUTED[symmetry * CardCode.CARD_COUNT + CardCode.index(card)] * 2 +
+                (CardCode.isFaceDown(card) ? 1 : 0);
+        return KEYS[(pile * MAX_PILE_SIZE + position) * CARD_SLOTS + slot];
+    }
+
+    /**
+     * Folds the per-symmetry hashes of the stock, waste and foundations
+     * ({@code piles}) and of each tableau column ({@code columns}, one row
+     * of {@link GameState#TABLEAU_COUNT} per symmetry) into the canonical
+     * hash.
+     */
+    public static long combine(long[] piles, long[] columns) {
+        long canonical = 0;
+        for (int symmetry = 0; symmetry < SYMMETRY_COUNT; symmetry++) {
+            long hash = piles[symmetry];
+            for (int column = 0; column < GameState.TABLEAU_COUNT; column++) {
+                hash += Deal.mix(columns[symmetry * GameState.TABLEAU_COUNT + column]);
+            }
+            canonical = symmetry == 0 ? hash : Math.min(canonical, hash);
+        }
+        return canonical;
+    }
+
+    /**
+     * With unlimited redeals the count is irrelevant and left out so
+     * recycling back to a known position is still recognized.
+     */
+    public static long redealKey(Rules rules, int redeals) {
+        if (rules.getRedealLimit() == Rules.UNLIMITED_REDEALS)
+            return 0;
+        return REDEAL_KEYS[Math.min(redeals, REDEAL_KEYS.length - 1)];
+    }
+
+    /**
+     * Hashes a position from scratch. {@link GameState#hash()} keeps the
+     * same value up to date move by move.
+     */
+    public static long hash(GameState state) {
+        long[] piles = new long[SYMMETRY_COUNT];
+        long[] columns = new long[SYMMETRY_COUNT * GameState.TABLEAU_COUNT];
+        for (int pile = 0; pile < GameState.PILE_COUNT; pile++) {
+            for (int position = 0; position < state.size(pile); position++) {
+                byte card = state.card(pile, position);
+                for (int symmetry = 0; symmetry < SYMMETRY_COUNT; symmetry++) {
+                    long key = key(symmetry, pile, position, card);
+                    if (GameState.isTableau(pile)) {
+                        columns[symmetry * GameState.TABLEAU_COUNT + pile - GameState.TABLEAU] ^= key;
+                    } else {
+                        piles[symmetry] ^= key;
+                    }
+                }
+            }
+        }
+        return combine(piles, columns) ^ redealKey(state.getRules(), state.getRedeals());
+    }
+}
@@ -0,0 +1,70 @@
+package com.codecool.klondike;
+
+/**
+ * Checks every (card, onto) pair of {@link CardTables} against the
+ * placement rules of the original {@code Game.isMoveValid}, which compared
+ * suits, colours and ranks card by card. Both cards are also tried face
+ * down, since the tables are indexed with the flag still set.
+ *
+ * <pre>java com.codecool.klondike.CardTablesTest</pre>
+ */
+public class CardTablesTest {
+
+    private static int checks;
+    private static int failures;
+
+    public static void main(String[] args) {
+        for (int i = 0; i < CardCode.CARD_COUNT; i++) {
+            int suit = i / CardCode.RANK_COUNT + 1;
+            int rank = i % CardCode.RANK_COUNT + 1;
+            byte card = CardCode.of(suit, rank);
+            for (byte variant : new byte[]{card, CardCode.faceDown(card)}) {
+                check("isKing", variant, null, CardTables.isKing(variant), rank == 13);
+                check("isAce", variant, null, CardTables.isAce(variant), rank == 1);
+            }
+            for (int j = 0; j < CardCode.CARD_COUNT; j++) {
+                int ontoSuit = j / CardCode.RANK_COUNT + 1;
+                int ontoRank = j % CardCode.RANK_COUNT + 1;
+                byte onto = CardCode.of(ontoSuit, ontoRank);
+                boolean stack = isOppositeColor(suit, ontoSuit) && isHigherRank(ontoRank, rank);
+                boolean found = suit == ontoSuit && isHigherRank(rank, ontoRank);
+                for (byte cardVariant : new byte[]{card, CardCode.faceDown(card)}) {
+                    for (byte ontoVariant : new byte[]{onto, CardCode.faceDown(onto)}) {
+                        check("canStack", cardVariant, ontoVariant,
+                                CardTables.canStack(cardVariant, ontoVariant), stack);
+                        check("canFound", cardVariant, ontoVariant,
+                                CardTables.canFound(cardVariant, ontoVariant), found);
+                        check("tableauTargets", cardVariant, ontoVariant,
+                                (CardTables.tableauTargets(cardVariant) & 1L << CardCode.index(ontoVariant)) != 0, stack);
+                        check("foundationTargets", cardVariant, ontoVariant,
+                                (CardTables.foundationTargets(cardVariant) & 1L << CardCode.index(ontoVariant)) != 0, found);
+                    }
+                }
+            }
+        }
+        System.out.printf("checks=%d failures=%d%n", checks, failures);
+        if (failures > 0)
+            throw new AssertionError(failures + " of " + checks + " card table checks failed");
+    }
+
+    private static void check(String name, byte card, Byte onto, boolean actual, boolean expected) {
+        checks++;
+        if (actual == expected)
+            return;
+        failures++;
+        System.out.println(name + "(" + CardCode.toString(card) +
+                (onto == null ? "" : ", " + CardCode.toString(onto)) + ") = " + actual + ", expected " + expected);
+    }
+
+    /**
+     * Colour rule of the original {@code Card.getCardColor}: suits 1 and 2
+     * are red.
+     */
+    private static boolean isOppositeColor(int suit1, int suit2) {
+        return (suit1 == 1 || suit1 == 2) != (suit2 == 1 || suit2 == 2);
+    }
+
+    private static boolean isHigherRank(int rank1, int rank2) {
+        return rank1 == rank2 + 1;
+    }
+}
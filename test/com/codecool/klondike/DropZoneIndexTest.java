@@ -0,0 +1,89 @@
+package com.codecool.klondike;
+
+/**
+ * Sweeps window sizes from 640x420 up to 2600x1600 and checks, for each,
+ * that building the drop zones of {@link DropZoneIndex#forLayout} succeeds
+ * and that every point inside a pile's zone lists that pile among its
+ * candidates, so overlapping zones are never lost however the table is
+ * scaled.
+ *
+ * <pre>java com.codecool.klondike.DropZoneIndexTest</pre>
+ */
+public class DropZoneIndexTest {
+
+    private static final double CELL = 30;
+    private static final int SAMPLES = 24;
+
+    private static int checks;
+    private static int failures;
+
+    public static void main(String[] args) {
+        TableLayout layout = new TableLayout();
+        for (int width = 640; width <= 2600; width += 6) {
+            for (int height = 420; height <= 1600; height += 6) {
+                layout.update(width, height);
+                checkLayout(layout);
+            }
+        }
+        System.out.printf("checks=%d failures=%d%n", checks, failures);
+        if (failures > 0)
+            throw new AssertionError(failures + " of " + checks + " drop zone checks failed");
+    }
+
+    private static void checkLayout(TableLayout layout) {
+        DropZoneIndex zones;
+        checks++;
+        try {
+            zones = DropZoneIndex.forLayout(layout, CELL * layout.getScale());
+        } catch (RuntimeException e) {
+            fail(layout, "forLayout threw " + e);
+            return;
+        }
+        double stepX = layout.getWidth() / SAMPLES;
+        double stepY = layout.getHeight() / SAMPLES;
+        for (int i = 0; i < SAMPLES; i++) {
+            for (int j = 0; j < SAMPLES; j++) {
+                double x = (i + 0.5) * stepX;
+                double y = (j + 0.5) * stepY;
+                int candidates = zones.candidates(x, y);
+                for (int pile = GameState.FOUNDATION; pile < GameState.PILE_COUNT; pile++) {
+                    checks++;
+                    if (inZone(layout, pile, x, y) && (candidates & 1 << pile) == 0)
+                        fail(layout, "pile " + pile + " missing at (" + x + ", " + y + ")");
+                }
+            }
+        }
+        for (int pile = GameState.FOUNDATION; pile < GameState.PILE_COUNT; pile++) {
+            double x = layout.pileX(pile) + layout.getCardWidth() / 2.0;
+            double y = layout.pileY(pile) + layout.getCardHeight() / 2.0;
+            int best = DropZoneIndex.NONE;
+            for (int candidates = zones.candidates(x, y); candidates != 0;
+                    candidates = DropZoneIndex.rest(candidates)) {
+                int candidate = DropZoneIndex.first(candidates);
+                if (best == DropZoneIndex.NONE || zones.distance(candidate, x, y) < zones.distance(best, x, y))
+                    best = candidate;
+            }
+            checks++;
+            if (best != pile)
+                fail(layout, "card on pile " + pile + " drops on " + best);
+        }
+    }
+
+    /**
+     * The zone geometry {@link DropZoneIndex#forLayout} documents, checked
+     * directly.
+     */
+    private static boolean inZone(TableLayout layout, int pile, double x, double y) {
+        double cardWidth = layout.getCardWidth();
+        double cardHeight = layout.getCardHeight();
+        double left = layout.pileX(pile) - cardWidth / 2.0;
+        double top = layout.pileY(pile) - cardHeight / 2.0;
+        double bottom = GameState.isTableau(pile) ? layout.getHeight() + cardHeight / 2.0 : top + cardHeight * 2;
+        return x >= left && x <= left + cardWidth * 2 && y >= top && y <= bottom;
+    }
+
+    private static void fail(TableLayout layout, String message) {
+        failures++;
+        System.out.println(layout.getWidth() + "x" + layout.getHeight() + ": " + message);
+    }
+}